@@ -28,6 +28,8 @@ public final class Constants {
 	public static final String AGENT_TYPE = "jenkins";
 	public static final String VERSION = "version";
 	public static final String AGENTS_VERSION = "agentsVersion";
+	public static final String PLUGIN_AGENTS_VERSION = "2.9.5";
+	public static final String PLUGIN_VERSION = "21.1.2";
 
 	/* --- Global settings --- */
 
@@ -47,6 +49,23 @@ public final class Constants {
 	public static final int DEFAULT_TIMEOUT = 60;
 	public static final String CONNECTION_RETRIES = "connectionRetries";
 	public static final String CONNECTION_RETRIES_INTERVAL = "connectionRetriesInterval";
+	public static final String UPDATE_BATCH_SIZE = "updateBatchSize";
+	public static final String UPDATE_BATCH_MAX_SIZE = "updateBatchMaxSize";
+	public static final String UPDATE_CONCURRENCY = "updateConcurrency";
+	public static final String DEFERRED_UPLOAD = "deferredUpload";
+	public static final String MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+	public static final String MAX_REQUESTS_PER_SECOND = "maxRequestsPerSecond";
+	public static final String POLICY_CACHE_TTL = "policyCacheTtl";
+	public static final String COALESCE_WINDOW = "coalesceWindow";
+	public static final String COALESCE_LAST_WRITER_WINS = "coalesceLastWriterWins";
+	public static final String AGENT_SIDE_UPLOAD = "agentSideUpload";
+	public static final String OPTIMISTIC_UPDATE = "optimisticUpdate";
+	public static final String EARLY_REJECTION = "earlyRejection";
+	public static final String POLICY_SNAPSHOT_REFRESH = "policySnapshotRefresh";
+	public static final String STEP_TIMEOUT = "stepTimeout";
+	public static final String SCAN_TIMEOUT = "scanTimeout";
+	public static final String POLICY_CHECK_TIMEOUT = "policyCheckTimeout";
+	public static final String UPDATE_TIMEOUT = "updateTimeout";
 
 	/* --- Other settings --- */
 
@@ -0,0 +1,127 @@
+package org.whitesource.jenkins;
+
+import hudson.model.Action;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Outcome of an update request queued by the build and sent in the background, shown on the build page.
+ */
+public class DeferredUploadAction implements Action {
+
+    /* --- Static members --- */
+
+    public enum Status {
+        QUEUED, SENT, FAILED
+    }
+
+    /* --- Members --- */
+
+    private Status status;
+    private final long queuedAt;
+    private long completedAt;
+    private String organization;
+    private List<String> createdProjects = new ArrayList<>();
+    private List<String> updatedProjects = new ArrayList<>();
+    private List<String> requestTokens = new ArrayList<>();
+    private String message;
+
+    /* --- Constructors --- */
+
+    public DeferredUploadAction() {
+        this.status = Status.QUEUED;
+        this.queuedAt = System.currentTimeMillis();
+    }
+
+    /* --- Static methods --- */
+
+    public static DeferredUploadAction sent(List<UpdateInventoryResult> results) {
+        DeferredUploadAction action = new DeferredUploadAction();
+        action.status = Status.SENT;
+        action.completedAt = System.currentTimeMillis();
+        for (UpdateInventoryResult result : results) {
+            action.organization = result.getOrganization();
+            action.createdProjects.addAll(result.getCreatedProjects());
+            action.updatedProjects.addAll(result.getUpdatedProjects());
+            if (StringUtils.isNotBlank(result.getRequestToken())) {
+                action.requestTokens.add(result.getRequestToken());
+            }
+        }
+        return action;
+    }
+
+    public static DeferredUploadAction failed(String message) {
+        DeferredUploadAction action = new DeferredUploadAction();
+        action.status = Status.FAILED;
+        action.completedAt = System.currentTimeMillis();
+        action.message = message;
+        return action;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Records the outcome of the request, keeping the time it was queued.
+     */
+    public synchronized void update(DeferredUploadAction outcome) {
+        status = outcome.status;
+        completedAt = outcome.completedAt;
+        organization = outcome.organization;
+        createdProjects = outcome.createdProjects;
+        updatedProjects = outcome.updatedProjects;
+        requestTokens = outcome.requestTokens;
+        message = outcome.message;
+    }
+
+    /* --- Getters --- */
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public Date getQueuedAt() {
+        return new Date(queuedAt);
+    }
+
+    public synchronized Date getCompletedAt() {
+        return completedAt == 0 ? null : new Date(completedAt);
+    }
+
+    public synchronized String getOrganization() {
+        return organization;
+    }
+
+    public synchronized List<String> getCreatedProjects() {
+        return createdProjects;
+    }
+
+    public synchronized List<String> getUpdatedProjects() {
+        return updatedProjects;
+    }
+
+    public synchronized String getRequestTokens() {
+        return StringUtils.join(requestTokens, ",");
+    }
+
+    public synchronized String getMessage() {
+        return message;
+    }
+}
@@ -1,30 +1,67 @@
 package org.whitesource.jenkins;
 
+import com.google.gson.Gson;
 import hudson.FilePath;
-import hudson.model.AbstractBuild;
 import hudson.model.DirectoryBrowserSupport;
 import hudson.model.ProminentProjectAction;
 import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.RequestPolicyInfo;
+import org.whitesource.jenkins.service.PolicyReportIndex;
+import org.whitesource.jenkins.service.PolicyReportStore;
 
 import javax.servlet.ServletException;
-import java.io.File;
-import java.io.IOException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author Edo.Shor
  */
-public class PolicyCheckReportAction implements ProminentProjectAction {
+public class PolicyCheckReportAction implements ProminentProjectAction, RunAction2 {
 
     /* --- Static members --- */
 
     public static final String ICON_PATH = "/plugin/whitesource/images/whitesource-icon.png";
     public static final String DISPLAY_NAME = "White Source - policy check report";
 
+    private static final String REJECT = "Reject";
+    private static final String APPROVE = "Approve";
+
+    private static final String INDEX_FILE = "index.html";
+    private static final String GZIP = "gzip";
+
+    /**
+     * Reports with more libraries open in the paginated view, the HTML report stays available.
+     */
+    public static final int LARGE_REPORT = 1000;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final Gson GSON = new Gson();
+
     /* --- Members --- */
 
-    private final Run<?, ?> run;
+    private transient Run<?, ?> run;
+
+    /**
+     * Report metadata, kept with the action so pages listing it don't touch the build directory.
+     */
+    private boolean reportAvailable;
+    private int rejections = -1;
+    private int approvals = -1;
+    private int libraries = -1;
+    private long checkedAt;
 
     /* --- Constructors --- */
 
@@ -32,25 +69,55 @@ public class PolicyCheckReportAction implements ProminentProjectAction {
      * Constructor
      *
      * @param run
+     * @param result Policy check result of the report.
      */
-    public PolicyCheckReportAction(Run<?, ?> run) {
+    public PolicyCheckReportAction(Run<?, ?> run, CheckPolicyComplianceResult result) {
         this.run = run;
+        this.reportAvailable = true;
+        this.rejections = 0;
+        this.approvals = 0;
+        this.libraries = 0;
+        this.checkedAt = System.currentTimeMillis();
+        for (Map<String, PolicyCheckResourceNode> projects : Arrays.asList(result.getExistingProjects(), result.getNewProjects())) {
+            if (projects != null) {
+                for (PolicyCheckResourceNode project : projects.values()) {
+                    count(project.getChildren());
+                }
+            }
+        }
     }
 
     /* --- Interface implementation methods --- */
 
     public String getIconFileName() {
-        return dir().exists() ? ICON_PATH : null;
+        return reportAvailable ? ICON_PATH : null;
     }
 
     public String getDisplayName() {
-        return dir().exists() ? DISPLAY_NAME : null;
+        return reportAvailable ? DISPLAY_NAME : null;
     }
 
     public String getUrlName() {
         return "whitesource";
     }
 
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+        if (checkedAt == 0) {
+            // saved by an earlier version without metadata, looked up once
+            reportAvailable = PolicyReportStore.getResultFile(r).exists() || dir().exists();
+            // XStream skips the field initializers, the counts are unknown rather than 0
+            rejections = -1;
+            approvals = -1;
+            libraries = -1;
+            checkedAt = r.getTimeInMillis();
+        }
+    }
+
     /* --- Public methods --- */
 
     public File getBuildArchiveDir(Run run) {
@@ -58,16 +125,155 @@ public class PolicyCheckReportAction implements ProminentProjectAction {
     }
 
     /**
-     * Serves HTML reports.
+     * Serves HTML reports, rendering the report from the policy check result on first access.
+     * <p>
+     * Report files are sent compressed with <code>Content-Encoding: gzip</code> to clients accepting it.
      */
     public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
-        DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, new FilePath(getBuildArchiveDir(this.run)), DISPLAY_NAME, ICON_PATH, false);
-        dbs.setIndexFileName("index.html");
-        dbs.generateResponse(req, rsp, this);
+        if (dir().exists()) {
+            // builds of earlier versions have the report rendered already
+            DirectoryBrowserSupport dbs = new DirectoryBrowserSupport(this, new FilePath(dir()), DISPLAY_NAME, ICON_PATH, false);
+            dbs.setIndexFileName(INDEX_FILE);
+            dbs.generateResponse(req, rsp, this);
+            return;
+        }
+
+        String path = req.getRestOfPath();
+        if (path.isEmpty()) {
+            // relative links of the report need the trailing slash
+            rsp.sendRedirect2(req.getRequestURI() + "/");
+            return;
+        }
+        path = path.substring(1);
+        if (path.isEmpty() && isLargeReport()) {
+            rsp.sendRedirect2("browse");
+            return;
+        }
+        if (path.isEmpty() || path.endsWith("/")) {
+            path += INDEX_FILE;
+        }
+        if (path.contains("..") || path.contains("\\")) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        PolicyReportStore.Report report = PolicyReportStore.get().render(this.run);
+        try {
+            File file = report.getCompressedFile(path);
+            if (file == null) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            String contentType = req.getServletContext().getMimeType(path);
+            rsp.setContentType(contentType == null ? "application/octet-stream" : contentType);
+            rsp.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip(req)) {
+                rsp.setHeader("Content-Encoding", GZIP);
+                rsp.setContentLength((int) file.length());
+                try (InputStream in = new FileInputStream(file)) {
+                    IOUtils.copy(in, rsp.getOutputStream());
+                }
+            } else {
+                try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+                    IOUtils.copy(in, rsp.getOutputStream());
+                }
+            }
+        } finally {
+            // a folder trimmed meanwhile is deleted now
+            report.release();
+        }
+    }
+
+    /**
+     * Serves a page of the libraries of the report as JSON, filtered and sorted by the request parameters.
+     *
+     * @see PolicyReportIndex#query(String, String, String, boolean, int, int)
+     */
+    public void doQuery(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!PolicyReportStore.getResultFile(this.run).exists()) {
+            // builds of earlier versions only have the HTML report
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        PolicyReportIndex.Page page = PolicyReportStore.get().index(this.run).query(req.getParameter("filter"),
+                req.getParameter("action"), req.getParameter("sort"), Boolean.parseBoolean(req.getParameter("descending")),
+                NumberUtils.toInt(req.getParameter("page"), 0), NumberUtils.toInt(req.getParameter("size"), DEFAULT_PAGE_SIZE));
+        rsp.setContentType("application/json;charset=UTF-8");
+        GSON.toJson(page, rsp.getWriter());
+    }
+
+    /* --- Getters --- */
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public boolean isReportAvailable() {
+        return reportAvailable;
+    }
+
+    /**
+     * @return Number of libraries rejected by policies, -1 if unknown.
+     */
+    public int getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return Number of libraries approved by policies, -1 if unknown.
+     */
+    public int getApprovals() {
+        return approvals;
+    }
+
+    /**
+     * @return Number of libraries in the report, -1 if unknown.
+     */
+    public int getLibraries() {
+        return libraries;
+    }
+
+    public boolean isLargeReport() {
+        return libraries > LARGE_REPORT;
+    }
+
+    public Date getCheckedAt() {
+        return new Date(checkedAt);
     }
 
     /* --- Private methods --- */
 
+    private void count(Collection<PolicyCheckResourceNode> nodes) {
+        if (nodes == null) {
+            return;
+        }
+        for (PolicyCheckResourceNode node : nodes) {
+            libraries++;
+            RequestPolicyInfo policy = node.getPolicy();
+            if (policy != null && REJECT.equals(policy.getActionType())) {
+                rejections++;
+            } else if (policy != null && APPROVE.equals(policy.getActionType())) {
+                approvals++;
+            }
+            count(node.getChildren());
+        }
+    }
+
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+                // gzip;q=0 refuses it
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
     private File dir() {
         return getBuildArchiveDir(this.run);
     }
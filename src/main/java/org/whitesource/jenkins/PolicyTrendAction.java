@@ -0,0 +1,180 @@
+package org.whitesource.jenkins;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.ProminentProjectAction;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.util.Graph;
+import jenkins.model.TransientActionFactory;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.whitesource.jenkins.service.TrendIndex;
+
+import javax.servlet.http.HttpServletResponse;
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Trend of the dependencies, policy rejections and step durations of the latest builds of a job.
+ */
+public class PolicyTrendAction implements ProminentProjectAction {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(PolicyTrendAction.class.getName());
+
+    public static final String DISPLAY_NAME = "White Source - policy trend";
+
+    /**
+     * Number of latest builds in the trend.
+     */
+    public static final int MAX_BUILDS = 100;
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /* --- Members --- */
+
+    private final Job<?, ?> job;
+
+    /* --- Constructors --- */
+
+    public PolicyTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public String getIconFileName() {
+        return PolicyCheckReportAction.ICON_PATH;
+    }
+
+    public String getDisplayName() {
+        return DISPLAY_NAME;
+    }
+
+    public String getUrlName() {
+        return "whitesource-trend";
+    }
+
+    /* --- Public methods --- */
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    /**
+     * @return The latest records of the job, by build number.
+     */
+    public List<TrendIndex.Record> getRecords() {
+        try {
+            return TrendIndex.read(job, MAX_BUILDS);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the WhiteSource trend of " + job.getFullName(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Chart of the dependencies and rejected libraries.
+     */
+    public void doInventoryGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        graph(req, rsp, false);
+    }
+
+    /**
+     * Chart of the scan and upload durations.
+     */
+    public void doDurationGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        graph(req, rsp, true);
+    }
+
+    /* --- Private methods --- */
+
+    private void graph(StaplerRequest req, StaplerResponse rsp, final boolean durations) throws IOException {
+        final List<TrendIndex.Record> records = getRecords();
+        if (records.isEmpty()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // changes with every build recorded, for the browser cache
+        long timestamp = TrendIndex.getIndexFile(job).lastModified();
+        new Graph(timestamp, 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+                for (TrendIndex.Record record : records) {
+                    String build = "#" + record.getNumber();
+                    if (durations) {
+                        if (record.getScanMillis() >= 0) {
+                            dataset.addValue(record.getScanMillis() / MILLIS_PER_SECOND, "Scan", build);
+                        }
+                        if (record.getUploadMillis() >= 0) {
+                            dataset.addValue(record.getUploadMillis() / MILLIS_PER_SECOND, "Upload", build);
+                        }
+                    } else {
+                        if (record.getDependencies() >= 0) {
+                            dataset.addValue(record.getDependencies(), "Dependencies", build);
+                        }
+                        if (record.getRejections() >= 0) {
+                            dataset.addValue(record.getRejections(), "Rejections", build);
+                        }
+                    }
+                }
+                JFreeChart chart = ChartFactory.createLineChart(null, null, durations ? "seconds" : "libraries", dataset,
+                        PlotOrientation.VERTICAL, true, true, false);
+                chart.setBackgroundPaint(Color.white);
+                return chart;
+            }
+        }.doPng(req, rsp);
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Adds the trend to the jobs with WhiteSource results.
+     */
+    @Extension
+    public static class Factory extends TransientActionFactory<Job<?, ?>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Job<?, ?>> type() {
+            return (Class<Job<?, ?>>) (Class<?>) Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Job<?, ?> target) {
+            if (!TrendIndex.exists(target)) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new PolicyTrendAction(target));
+        }
+    }
+
+    /**
+     * Removes the records of deleted builds from the trend.
+     */
+    @Extension
+    public static class DeletedBuildListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            try {
+                TrendIndex.remove(run);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to remove " + run + " from the WhiteSource trend", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.whitesource.jenkins;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.whitesource.jenkins.service.PolicyCheckCache;
+import org.whitesource.jenkins.service.RequestStats;
+
+/**
+ * Page of the Manage Jenkins section with the statistics of the requests sent to WhiteSource
+ * and the cached policy check results.
+ */
+@Extension
+public class RequestStatsLink extends ManagementLink {
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public String getIconFileName() {
+        return PolicyCheckReportAction.ICON_PATH;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "White Source - request statistics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Latency, throughput and failures of the requests sent to WhiteSource by the builds of this Jenkins, " +
+                "and the cached policy check results.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "whitesource-stats";
+    }
+
+    /* --- Public methods --- */
+
+    public RequestStats getStats() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return RequestStats.get();
+    }
+
+    public int getCachedPolicyChecks() {
+        return PolicyCheckCache.get().size();
+    }
+
+    /**
+     * Drops the cached policy check results, for builds to see policies just changed in WhiteSource.
+     */
+    @RequirePOST
+    public HttpResponse doClearPolicyCache() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        PolicyCheckCache.get().invalidate();
+        return HttpResponses.redirectToDot();
+    }
+}
@@ -29,17 +29,24 @@ import hudson.util.Secret;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.jenkins.model.WhiteSourceDescriptor;
 import org.whitesource.jenkins.model.WhiteSourceStep;
+import org.whitesource.jenkins.service.PolicyCheckCache;
+import org.whitesource.jenkins.service.PolicySnapshot;
+import org.whitesource.jenkins.service.RequestLimiter;
+import org.whitesource.jenkins.service.WhitesourceServicePool;
 import org.whitesource.jenkins.Constants;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +89,8 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
 
     private boolean ignorePomModules;
 
+    private boolean skipUnchangedModules;
+
     /* --- Static Members --- */
 
     private static String ENV_REGEX = "(\\$\\{.*?})|(\\$[^\\s]+)";
@@ -104,6 +113,7 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
         modulesToInclude = whiteSourcePublisher.modulesToInclude;
         modulesToExclude = whiteSourcePublisher.modulesToExclude;
         ignorePomModules = whiteSourcePublisher.ignorePomModules;
+        skipUnchangedModules = whiteSourcePublisher.skipUnchangedModules;
     }
 
     @DataBoundConstructor
@@ -170,16 +180,26 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
             return;
         }
 
+        if (whiteSourceStep.isAgentUpload(run)) {
+            // the agent sends the dependencies itself, only the result summary comes back
+            whiteSourceStep.uploadFromAgent(run, listener, workspace).getProjectInfos();
+            whiteSourceStep.recordTrend(run, listener, Collections.<AgentProjectInfo>emptyList());
+            return;
+        }
+
         Collection<AgentProjectInfo> projectInfos = whiteSourceStep.getProjectInfos(run, listener, workspace, false);
         //        if (projectInfos == null) {
         //            whiteSourceStep.stopBuild(run, listener, "Unrecognized build type " + run.getClass().getName());
         //            return;
         //        } else
-        if (projectInfos.isEmpty()) {
+        if (whiteSourceStep.isRejectedByPolicies()) {
+            logger.println("Update skipped, rejected by policies while scanning");
+        } else if (projectInfos.isEmpty()) {
             logger.println(Constants.OSS_INFO_NOT_FOUND);
         } else {
             whiteSourceStep.update(run, listener, projectInfos);
         }
+        whiteSourceStep.recordTrend(run, listener, projectInfos);
     }
 
     /* --- Public methods --- */
@@ -222,6 +242,23 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
         private String connectionRetries;
 
         private String connectionRetriesInterval;
+        private String updateBatchSize;
+        private String updateBatchMaxSize;
+        private String updateConcurrency;
+        private boolean deferredUpload;
+        private String maxConcurrentRequests;
+        private String maxRequestsPerSecond;
+        private String policyCacheTtl;
+        private String coalesceWindow;
+        private boolean coalesceLastWriterWins;
+        private boolean agentSideUpload;
+        private boolean optimisticUpdate;
+        private boolean earlyRejection;
+        private String policySnapshotRefresh;
+        private String stepTimeout;
+        private String scanTimeout;
+        private String policyCheckTimeout;
+        private String updateTimeout;
         /* --- Constructor --- */
 
         /**
@@ -230,6 +267,7 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
         public DescriptorImpl() {
             super();
             load();
+            applyRequestLimits();
         }
 
         /* --- Overridden methods --- */
@@ -271,11 +309,43 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
             connectionTimeout = json.getString(Constants.CONNECTION_TIMEOUT);
             connectionRetries = json.getString(Constants.CONNECTION_RETRIES);
             connectionRetriesInterval = json.getString(Constants.CONNECTION_RETRIES_INTERVAL);
+            updateBatchSize = json.getString(Constants.UPDATE_BATCH_SIZE);
+            updateBatchMaxSize = json.getString(Constants.UPDATE_BATCH_MAX_SIZE);
+            updateConcurrency = json.getString(Constants.UPDATE_CONCURRENCY);
+            deferredUpload = json.getBoolean(Constants.DEFERRED_UPLOAD);
+            maxConcurrentRequests = json.getString(Constants.MAX_CONCURRENT_REQUESTS);
+            maxRequestsPerSecond = json.getString(Constants.MAX_REQUESTS_PER_SECOND);
+            policyCacheTtl = json.getString(Constants.POLICY_CACHE_TTL);
+            coalesceWindow = json.getString(Constants.COALESCE_WINDOW);
+            coalesceLastWriterWins = json.getBoolean(Constants.COALESCE_LAST_WRITER_WINS);
+            agentSideUpload = json.getBoolean(Constants.AGENT_SIDE_UPLOAD);
+            optimisticUpdate = json.getBoolean(Constants.OPTIMISTIC_UPDATE);
+            earlyRejection = json.getBoolean(Constants.EARLY_REJECTION);
+            policySnapshotRefresh = json.getString(Constants.POLICY_SNAPSHOT_REFRESH);
+            stepTimeout = json.getString(Constants.STEP_TIMEOUT);
+            scanTimeout = json.getString(Constants.SCAN_TIMEOUT);
+            policyCheckTimeout = json.getString(Constants.POLICY_CHECK_TIMEOUT);
+            updateTimeout = json.getString(Constants.UPDATE_TIMEOUT);
             save();
+            applyRequestLimits();
+            // pooled clients were built from the previous settings
+            WhitesourceServicePool.get().invalidate();
+            // policy check results may depend on the previous settings
+            PolicyCheckCache.get().invalidate();
+            PolicySnapshot.get().invalidate();
 
             return super.configure(req, json);
         }
 
+        /* --- Private methods --- */
+
+        /**
+         * The request limits of all builds, pipelines included, are only set here.
+         */
+        private void applyRequestLimits() {
+            RequestLimiter.get().configure(NumberUtils.toInt(maxConcurrentRequests, 0), NumberUtils.toInt(maxRequestsPerSecond, 0));
+        }
+
         /* --- Public methods --- */
 
         public FormValidation doCheckApiToken(@QueryParameter String apiToken) {
@@ -297,6 +367,66 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
             return formValidation;
         }
 
+        public FormValidation doCheckUpdateBatchSize(@QueryParameter String updateBatchSize) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateBatchSize);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateBatchMaxSize(@QueryParameter String updateBatchMaxSize) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateBatchMaxSize);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateConcurrency(@QueryParameter String updateConcurrency) {
+            FormValidation formValidation = FormValidation.validatePositiveInteger(updateConcurrency);
+            return formValidation;
+        }
+
+        public FormValidation doCheckMaxConcurrentRequests(@QueryParameter String maxConcurrentRequests) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(maxConcurrentRequests);
+            return formValidation;
+        }
+
+        public FormValidation doCheckMaxRequestsPerSecond(@QueryParameter String maxRequestsPerSecond) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(maxRequestsPerSecond);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicyCacheTtl(@QueryParameter String policyCacheTtl) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policyCacheTtl);
+            return formValidation;
+        }
+
+        public FormValidation doCheckCoalesceWindow(@QueryParameter String coalesceWindow) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(coalesceWindow);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicySnapshotRefresh(@QueryParameter String policySnapshotRefresh) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policySnapshotRefresh);
+            return formValidation;
+        }
+
+        public FormValidation doCheckStepTimeout(@QueryParameter String stepTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(stepTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckScanTimeout(@QueryParameter String scanTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(scanTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicyCheckTimeout(@QueryParameter String policyCheckTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policyCheckTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateTimeout(@QueryParameter String updateTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateTimeout);
+            return formValidation;
+        }
+
         /* --- Getters / Setters --- */
 
         public String getServiceUrl() {
@@ -411,6 +541,142 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
             this.connectionRetriesInterval = connectionRetriesInterval;
         }
 
+        public String getUpdateBatchSize() {
+            return updateBatchSize;
+        }
+
+        public void setUpdateBatchSize(String updateBatchSize) {
+            this.updateBatchSize = updateBatchSize;
+        }
+
+        public String getUpdateBatchMaxSize() {
+            return updateBatchMaxSize;
+        }
+
+        public void setUpdateBatchMaxSize(String updateBatchMaxSize) {
+            this.updateBatchMaxSize = updateBatchMaxSize;
+        }
+
+        public String getUpdateConcurrency() {
+            return updateConcurrency;
+        }
+
+        public void setUpdateConcurrency(String updateConcurrency) {
+            this.updateConcurrency = updateConcurrency;
+        }
+
+        public boolean isDeferredUpload() {
+            return deferredUpload;
+        }
+
+        public void setDeferredUpload(boolean deferredUpload) {
+            this.deferredUpload = deferredUpload;
+        }
+
+        public String getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public void setMaxConcurrentRequests(String maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+
+        public String getMaxRequestsPerSecond() {
+            return maxRequestsPerSecond;
+        }
+
+        public void setMaxRequestsPerSecond(String maxRequestsPerSecond) {
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+        }
+
+        public String getPolicyCacheTtl() {
+            return policyCacheTtl;
+        }
+
+        public void setPolicyCacheTtl(String policyCacheTtl) {
+            this.policyCacheTtl = policyCacheTtl;
+        }
+
+        public String getCoalesceWindow() {
+            return coalesceWindow;
+        }
+
+        public void setCoalesceWindow(String coalesceWindow) {
+            this.coalesceWindow = coalesceWindow;
+        }
+
+        public boolean isCoalesceLastWriterWins() {
+            return coalesceLastWriterWins;
+        }
+
+        public void setCoalesceLastWriterWins(boolean coalesceLastWriterWins) {
+            this.coalesceLastWriterWins = coalesceLastWriterWins;
+        }
+
+        public boolean isAgentSideUpload() {
+            return agentSideUpload;
+        }
+
+        public void setAgentSideUpload(boolean agentSideUpload) {
+            this.agentSideUpload = agentSideUpload;
+        }
+
+        public boolean isOptimisticUpdate() {
+            return optimisticUpdate;
+        }
+
+        public void setOptimisticUpdate(boolean optimisticUpdate) {
+            this.optimisticUpdate = optimisticUpdate;
+        }
+
+        public boolean isEarlyRejection() {
+            return earlyRejection;
+        }
+
+        public void setEarlyRejection(boolean earlyRejection) {
+            this.earlyRejection = earlyRejection;
+        }
+
+        public String getPolicySnapshotRefresh() {
+            return policySnapshotRefresh;
+        }
+
+        public void setPolicySnapshotRefresh(String policySnapshotRefresh) {
+            this.policySnapshotRefresh = policySnapshotRefresh;
+        }
+
+        public String getStepTimeout() {
+            return stepTimeout;
+        }
+
+        public void setStepTimeout(String stepTimeout) {
+            this.stepTimeout = stepTimeout;
+        }
+
+        public String getScanTimeout() {
+            return scanTimeout;
+        }
+
+        public void setScanTimeout(String scanTimeout) {
+            this.scanTimeout = scanTimeout;
+        }
+
+        public String getPolicyCheckTimeout() {
+            return policyCheckTimeout;
+        }
+
+        public void setPolicyCheckTimeout(String policyCheckTimeout) {
+            this.policyCheckTimeout = policyCheckTimeout;
+        }
+
+        public String getUpdateTimeout() {
+            return updateTimeout;
+        }
+
+        public void setUpdateTimeout(String updateTimeout) {
+            this.updateTimeout = updateTimeout;
+        }
+
     }
 
     /* --- Private methods --- */
@@ -521,4 +787,13 @@ public class WhiteSourcePublisher extends Publisher implements SimpleBuildStep {
     public boolean isIgnorePomModules() {
         return ignorePomModules;
     }
+
+    public boolean isSkipUnchangedModules() {
+        return skipUnchangedModules;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedModules(boolean skipUnchangedModules) {
+        this.skipUnchangedModules = skipUnchangedModules;
+    }
 }
@@ -0,0 +1,172 @@
+package org.whitesource.jenkins.extractor;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Matches values against a set of patterns compiled once.
+ * <p>
+ * Two syntaxes are supported, either way patterns prefixed with {@value #REGEX_PREFIX} are plain regular expressions:
+ * <ul>
+ * <li>{@link #compile} keeps the syntax of the module include and exclude patterns: a regular expression
+ * where <code>.</code> is a literal dot and <code>*</code> matches any sequence of characters,
+ * so <code>a|b</code>, <code>module-[0-9]+</code> or <code>module-?</code> match as they always did.</li>
+ * <li>{@link #compileGlobs} reads file name globs, where <code>*</code> matches any sequence of characters,
+ * <code>?</code> any single character and anything else itself.</li>
+ * </ul>
+ * Literals, <code>prefix*</code> and <code>*suffix</code> patterns are looked up in hash indexes,
+ * all other patterns are merged into a single regular expression.
+ */
+public final class PatternSetMatcher implements Serializable {
+
+    /* --- Static members --- */
+
+    private static final long serialVersionUID = -2403538270405427541L;
+
+    public static final String REGEX_PREFIX = "regex:";
+
+    private static final char ANY_SEQUENCE = '*';
+    private static final char ANY_CHARACTER = '?';
+
+    /**
+     * Characters other than <code>.</code> and <code>*</code> with a meaning in module patterns.
+     */
+    private static final String REGEX_CHARACTERS = "\\^$|?+()[]{}";
+
+    /* --- Members --- */
+
+    private final boolean empty;
+    private final boolean matchAll;
+    private final Set<String> literals = new HashSet<>();
+    private final Set<String> prefixes = new HashSet<>();
+    private final Set<String> suffixes = new HashSet<>();
+    private final SortedSet<Integer> prefixLengths = new TreeSet<>();
+    private final SortedSet<Integer> suffixLengths = new TreeSet<>();
+    private final Pattern combined;
+
+    /* --- Constructors --- */
+
+    private PatternSetMatcher(Collection<String> patterns, boolean globs) {
+        boolean all = false;
+        List<String> regexes = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (StringUtils.isBlank(pattern)) {
+                continue;
+            }
+            if (pattern.startsWith(REGEX_PREFIX)) {
+                regexes.add(pattern.substring(REGEX_PREFIX.length()));
+                continue;
+            }
+
+            int first = pattern.indexOf(ANY_SEQUENCE);
+            int last = pattern.lastIndexOf(ANY_SEQUENCE);
+            if (globs ? pattern.indexOf(ANY_CHARACTER) >= 0 : StringUtils.containsAny(pattern, REGEX_CHARACTERS)) {
+                regexes.add(globs ? globToRegex(pattern) : modulePatternToRegex(pattern));
+            } else if (first < 0) {
+                literals.add(pattern);
+            } else if (pattern.length() == 1) {
+                all = true;
+            } else if (first == last && last == pattern.length() - 1) {
+                String prefix = pattern.substring(0, last);
+                prefixes.add(prefix);
+                prefixLengths.add(prefix.length());
+            } else if (first == last && first == 0) {
+                String suffix = pattern.substring(1);
+                suffixes.add(suffix);
+                suffixLengths.add(suffix.length());
+            } else {
+                regexes.add(globs ? globToRegex(pattern) : modulePatternToRegex(pattern));
+            }
+        }
+        matchAll = all;
+        empty = !all && literals.isEmpty() && prefixes.isEmpty() && suffixes.isEmpty() && regexes.isEmpty();
+        combined = regexes.isEmpty() ? null : Pattern.compile("(?:" + StringUtils.join(regexes, ")|(?:") + ")");
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return A matcher of module patterns.
+     */
+    public static PatternSetMatcher compile(Collection<String> patterns) {
+        return new PatternSetMatcher(patterns == null ? Collections.<String>emptyList() : patterns, false);
+    }
+
+    public static PatternSetMatcher compile(String... patterns) {
+        return compile(Arrays.asList(patterns));
+    }
+
+    /**
+     * @return A matcher of file name globs.
+     */
+    public static PatternSetMatcher compileGlobs(Collection<String> patterns) {
+        return new PatternSetMatcher(patterns == null ? Collections.<String>emptyList() : patterns, true);
+    }
+
+    public static PatternSetMatcher compileGlobs(String... patterns) {
+        return compileGlobs(Arrays.asList(patterns));
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return True if the value matches any of the patterns.
+     */
+    public boolean matches(String value) {
+        if (value == null || empty) {
+            return false;
+        }
+        if (matchAll || literals.contains(value)) {
+            return true;
+        }
+
+        int length = value.length();
+        for (Integer prefixLength : prefixLengths.headSet(length + 1)) {
+            if (prefixes.contains(value.substring(0, prefixLength))) {
+                return true;
+            }
+        }
+        for (Integer suffixLength : suffixLengths.headSet(length + 1)) {
+            if (suffixes.contains(value.substring(length - suffixLength))) {
+                return true;
+            }
+        }
+        return combined != null && combined.matcher(value).matches();
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * The conversion module patterns always had.
+     */
+    private static String modulePatternToRegex(String pattern) {
+        return pattern.replace(".", "\\.").replace("*", ".*");
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == ANY_SEQUENCE || c == ANY_CHARACTER) {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == ANY_SEQUENCE ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+}
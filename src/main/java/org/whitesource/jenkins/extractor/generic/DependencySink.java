@@ -0,0 +1,17 @@
+package org.whitesource.jenkins.extractor.generic;
+
+import org.whitesource.jenkins.model.RemoteDependency;
+
+import java.util.List;
+
+/**
+ * Receives the dependencies found by a {@link LibFolderScanner} while it is still scanning.
+ * Exported to the agent, so calls reach the controller.
+ */
+public interface DependencySink {
+
+    /**
+     * @return False to stop the scan.
+     */
+    boolean offer(List<RemoteDependency> dependencies);
+}
@@ -11,12 +11,16 @@ import org.whitesource.agent.api.model.Coordinates;
 import org.whitesource.agent.api.model.DependencyInfo;
 import org.whitesource.jenkins.extractor.BaseOssInfoExtractor;
 import org.whitesource.jenkins.model.RemoteDependency;
+import org.whitesource.jenkins.service.RequestRetry;
+import org.whitesource.jenkins.service.RequestStats;
+import org.whitesource.jenkins.service.WhitesourceServicePool;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Concrete implementation for collecting open source info from FreeStyle projects.
@@ -33,6 +37,8 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor {
 
     private final Secret projectToken;
     private final FilePath workspace;
+    private DependencySink dependencySink;
+    private int batchSize;
 
     /* --- Constructors --- */
 
@@ -50,15 +56,55 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor {
 
     @Override
     public Collection<AgentProjectInfo> extract() throws InterruptedException, IOException {
-        Collection<AgentProjectInfo> projectInfos = new ArrayList<>();
+        if (workspace == null) {
+            throw new RuntimeException("Failed to acquire the Build's workspace");
+        }
+        return toProjectInfos(workspace.act(createScanner()));
+    }
 
-        if (CollectionUtils.isEmpty(includes)) {
-            for (String extension : DEFAULT_SCAN_EXTENSIONS) {
-                includes.add("**/*." + extension);
-            }
+    /* --- Public methods --- */
+
+    /**
+     * Hands the dependencies found to the sink in batches while the workspace is being scanned.
+     */
+    public void setDependencySink(DependencySink dependencySink, int batchSize) {
+        this.dependencySink = dependencySink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts scanning the workspace without waiting for the agent to complete.
+     *
+     * @return The dependencies found in the workspace, to be turned to projects with {@link #toProjectInfos(Collection)}.
+     */
+    public Future<Collection<RemoteDependency>> extractAsync() throws InterruptedException, IOException {
+        if (workspace == null) {
+            throw new RuntimeException("Failed to acquire the Build's workspace");
         }
+        return workspace.actAsync(createScanner());
+    }
 
-        LibFolderScanner libScanner = new LibFolderScanner(includes, excludes, listener);
+    /**
+     * Starts scanning the workspace and sending the update request from the agent.
+     *
+     * @return Summary of the update request, the dependencies stay on the agent.
+     */
+    public Future<LibFolderUploader.Summary> uploadAsync(WhitesourceServicePool.Key serviceKey, Secret orgToken, Secret userKey,
+                                                         String product, String productVersion, String requesterEmail,
+                                                         int retries, int retriesInterval) throws InterruptedException, IOException {
+        if (workspace == null) {
+            throw new RuntimeException("Failed to acquire the Build's workspace");
+        }
+        // calls from the agent take their turn on the controller
+        RequestRetry.Guard guard = workspace.getChannel().export(RequestRetry.Guard.class,
+                RequestRetry.guard(serviceKey.getServiceUrl(), Secret.toString(orgToken), RequestStats.UPDATE));
+        return workspace.actAsync(new LibFolderUploader(createScanner(), listener, serviceKey, guard, Secret.toString(orgToken),
+                Secret.toString(userKey), product, productVersion, requesterEmail, Secret.toString(projectToken),
+                run.getParent().getName(), "build #" + run.getNumber(), retries, retriesInterval));
+    }
+
+    public Collection<AgentProjectInfo> toProjectInfos(Collection<RemoteDependency> remoteDependencies) {
+        Collection<AgentProjectInfo> projectInfos = new ArrayList<>();
         AgentProjectInfo projectInfo = new AgentProjectInfo();
         if (StringUtils.isBlank(Secret.toString(projectToken))) {
             projectInfo.setCoordinates(new Coordinates(null, run.getParent().getName(), "build #" + run.getNumber()));
@@ -66,19 +112,31 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor {
             projectInfo.setProjectToken(Secret.toString(projectToken));
         }
 
-        if (workspace == null) {
-            throw new RuntimeException("Failed to acquire the Build's workspace");
-        }
         Collection<DependencyInfo> dependencies = projectInfo.getDependencies();
         if (dependencies == null) {
             dependencies = new ArrayList<>();
             projectInfo.setDependencies((List<DependencyInfo>) dependencies);
         }
 
-        Collection<RemoteDependency> remoteDependencies = workspace.act(libScanner);
         dependencies.addAll(RemoteDependency.convert(remoteDependencies));
         projectInfos.add(projectInfo);
 
         return projectInfos;
     }
+
+    /* --- Private methods --- */
+
+    private LibFolderScanner createScanner() {
+        if (CollectionUtils.isEmpty(includes)) {
+            for (String extension : DEFAULT_SCAN_EXTENSIONS) {
+                includes.add("**/*." + extension);
+            }
+        }
+        if (dependencySink == null) {
+            return new LibFolderScanner(includes, excludes, listener);
+        }
+        // calls from the agent reach the sink on the controller
+        DependencySink exported = workspace.getChannel().export(DependencySink.class, dependencySink);
+        return new LibFolderScanner(includes, excludes, listener, exported, batchSize);
+    }
 }
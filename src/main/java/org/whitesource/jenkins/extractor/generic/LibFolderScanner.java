@@ -16,16 +16,21 @@
 
 package org.whitesource.jenkins.extractor.generic;
 
+import hudson.AbortException;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import jenkins.MasterToSlaveFileCallable;
 import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
 import org.whitesource.agent.api.model.ChecksumType;
 import org.whitesource.agent.hash.ChecksumUtils;
 import org.whitesource.agent.hash.FileExtensions;
 import org.whitesource.agent.hash.HashCalculationResult;
 import org.whitesource.agent.hash.HashCalculator;
+import org.whitesource.jenkins.extractor.PatternSetMatcher;
 import org.whitesource.jenkins.model.RemoteDependency;
 
 import java.io.File;
@@ -43,7 +48,11 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 
 	private static final long serialVersionUID = 6773794529916357187L;
 
-	private static final String JAVA_SCRIPT_REGEX = ".*\\.js";
+	private static final PatternSetMatcher JAVA_SCRIPT_FILES = PatternSetMatcher.compileGlobs("*.js");
+	private static final PatternSetMatcher BINARY_FILES =
+			PatternSetMatcher.compileGlobs(PatternSetMatcher.REGEX_PREFIX + FileExtensions.BINARY_FILE_EXTENSION_REGEX);
+	private static final String ANY_FOLDER = "**/";
+	private static final String ALL_FILES = "**/*";
 	public static final String EMPTY_STRING = "";
 
 	/* --- Members --- */
@@ -56,6 +65,10 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 
 	private Collection<RemoteDependency> dependencies;
 
+	private DependencySink sink;
+
+	private int batchSize;
+
 	/* --- Constructors --- */
 
 	/**
@@ -71,6 +84,18 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 		dependencies = new ArrayList<RemoteDependency>();
 	}
 
+	/**
+	 * Constructor
+	 *  @param sink Receives the dependencies found, every batchSize dependencies, while scanning.
+	 * @param batchSize Number of dependencies per batch.
+	 */
+	public LibFolderScanner(List<String> libIncludes, List<String> libExcludes, TaskListener listener,
+							DependencySink sink, int batchSize) {
+		this(libIncludes, libExcludes, listener);
+		this.sink = sink;
+		this.batchSize = batchSize;
+	}
+
 	/* --- Interface implementation methods --- */
 
 	public Collection<RemoteDependency> invoke(File f, VirtualChannel channel)
@@ -79,12 +104,38 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 
 		String includes = StringUtils.join(libIncludes, ",");
 		String excludes = StringUtils.join(libExcludes, ",");
-		FilePath[] libraries = new FilePath(f).list(includes, excludes);
+		List<FilePath> libraries = new ArrayList<FilePath>();
+		PatternSetMatcher fileNames = fileNameMatcher(libIncludes);
+		if (fileNames == null) {
+			libraries.addAll(Arrays.asList(new FilePath(f).list(includes, excludes)));
+		} else {
+			// the includes only constrain the file name, one lookup per file instead of matching every include
+			DirectoryScanner scanner = Util.createFileSet(f, ALL_FILES, excludes).getDirectoryScanner(new Project());
+			for (String path : scanner.getIncludedFiles()) {
+				File file = new File(f, path);
+				if (fileNames.matches(file.getName())) {
+					libraries.add(new FilePath(file));
+				}
+			}
+		}
+		List<RemoteDependency> batch = new ArrayList<RemoteDependency>();
 		for (FilePath file : libraries) {
+			RemoteDependency dependency;
 			try {
-				dependencies.add(collectDependencyInfo(file));
+				dependency = collectDependencyInfo(file);
 			} catch (IOException e) {
 				listener.getLogger().println("Error extracting library details");
+				continue;
+			}
+			dependencies.add(dependency);
+			if (sink != null && batchSize > 0) {
+				batch.add(dependency);
+				if (batch.size() >= batchSize) {
+					if (!sink.offer(batch)) {
+						throw new AbortException("Scan stopped after " + dependencies.size() + " dependencies");
+					}
+					batch = new ArrayList<RemoteDependency>();
+				}
 			}
 		}
 
@@ -95,6 +146,28 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 
 	/* --- Private methods --- */
 
+	/**
+	 * @return A matcher of the file names included, null if an include pattern constrains the folders too.
+	 */
+	private static PatternSetMatcher fileNameMatcher(List<String> includes) {
+		if (includes == null || includes.isEmpty()) {
+			return null;
+		}
+		List<String> names = new ArrayList<String>();
+		for (String include : includes) {
+			String name = include.replace('\\', '/');
+			if (!name.startsWith(ANY_FOLDER)) {
+				return null;
+			}
+			name = name.substring(ANY_FOLDER.length());
+			if (name.isEmpty() || name.indexOf('/') >= 0 || name.contains("**") || name.startsWith(PatternSetMatcher.REGEX_PREFIX)) {
+				return null;
+			}
+			names.add(name);
+		}
+		return PatternSetMatcher.compileGlobs(names);
+	}
+
 	private RemoteDependency collectDependencyInfo(FilePath file) throws IOException, InterruptedException {
 		RemoteDependency info = new RemoteDependency();
 		info.setSystemPath(file.getRemote());
@@ -107,7 +180,8 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 	}
 
 	private void calculateHashes(File file, RemoteDependency info) {
-		if (file.getName().toLowerCase().matches(JAVA_SCRIPT_REGEX)) {
+		String fileName = file.getName().toLowerCase();
+		if (JAVA_SCRIPT_FILES.matches(fileName)) {
 			Map<ChecksumType, String> javaScriptChecksums = new HashMap<>();
 			try {
 				javaScriptChecksums = new HashCalculator().calculateJavaScriptHashes(file);
@@ -126,7 +200,7 @@ public class LibFolderScanner extends MasterToSlaveFileCallable<Collection<Remot
 
 		// super hash
 		HashCalculator superHashCalculator = new HashCalculator();
-		if (!file.getName().toLowerCase().matches(FileExtensions.BINARY_FILE_EXTENSION_REGEX)) {
+		if (!BINARY_FILES.matches(fileName)) {
 			try {
 				HashCalculationResult superHashResult = superHashCalculator.calculateSuperHash(file);
 				if (superHashResult != null) {
@@ -0,0 +1,194 @@
+package org.whitesource.jenkins.extractor.generic;
+
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.jenkins.model.RemoteDependency;
+import org.whitesource.jenkins.service.Deadline;
+import org.whitesource.jenkins.service.RequestRetry;
+import org.whitesource.jenkins.service.WhitesourceServicePool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scans the workspace and sends the update request from the agent, so the dependencies never pass through the controller.
+ * Only a {@link Summary} of the result is sent back.
+ * <p>
+ * The organization token, user key and proxy settings only live in memory for the duration of the request.
+ * The request waits for its turn through a guard exported from the controller, so it counts in the request limits
+ * and the circuit breaker of the controller like the requests sent from there.
+ */
+public class LibFolderUploader extends MasterToSlaveFileCallable<LibFolderUploader.Summary> {
+
+    /* --- Static members --- */
+
+    private static final long serialVersionUID = -2218716097734826245L;
+
+    /* --- Members --- */
+
+    private final LibFolderScanner scanner;
+    private final TaskListener listener;
+    private final WhitesourceServicePool.Key serviceKey;
+    private final RequestRetry.Guard guard;
+    private final String orgToken;
+    private final String userKey;
+    private final String product;
+    private final String productVersion;
+    private final String requesterEmail;
+    private final String projectToken;
+    private final String projectName;
+    private final String projectVersion;
+    private final int retries;
+    private final int retriesInterval;
+
+    /* --- Constructors --- */
+
+    public LibFolderUploader(LibFolderScanner scanner, TaskListener listener, WhitesourceServicePool.Key serviceKey,
+                             RequestRetry.Guard guard, String orgToken, String userKey, String product, String productVersion, String requesterEmail,
+                             String projectToken, String projectName, String projectVersion, int retries, int retriesInterval) {
+        this.scanner = scanner;
+        this.listener = listener;
+        this.serviceKey = serviceKey;
+        this.guard = guard;
+        this.orgToken = orgToken;
+        this.userKey = userKey;
+        this.product = product;
+        this.productVersion = productVersion;
+        this.requesterEmail = requesterEmail;
+        this.projectToken = projectToken;
+        this.projectName = projectName;
+        this.projectVersion = projectVersion;
+        this.retries = retries;
+        this.retriesInterval = retriesInterval;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public Summary invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+        Collection<RemoteDependency> remoteDependencies = scanner.invoke(f, channel);
+        if (remoteDependencies.isEmpty()) {
+            return new Summary(0);
+        }
+
+        AgentProjectInfo projectInfo = new AgentProjectInfo();
+        if (StringUtils.isBlank(projectToken)) {
+            projectInfo.setCoordinates(new Coordinates(null, projectName, projectVersion));
+        } else {
+            projectInfo.setProjectToken(projectToken);
+        }
+        projectInfo.setDependencies(new ArrayList<DependencyInfo>(RemoteDependency.convert(remoteDependencies)));
+
+        PrintStream logger = listener.getLogger();
+        logger.println("Sending to White Source from the agent");
+        Summary summary = new Summary(remoteDependencies.size());
+        final WhitesourceService service = serviceKey.create();
+        try {
+            int retriesLeft = retries;
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    final UpdateInventoryRequest updateRequest = new UpdateInventoryRequest(orgToken, product, productVersion,
+                            Collections.singletonList(projectInfo), userKey, null);
+                    updateRequest.setRequesterEmail(requesterEmail);
+                    summary.sent(RequestRetry.send(guard, Deadline.NONE, new RequestRetry.Request<UpdateInventoryResult>() {
+                        @Override
+                        public UpdateInventoryResult send() throws WssServiceException {
+                            return service.update(updateRequest);
+                        }
+                    }));
+                    return summary;
+                } catch (WssServiceException e) {
+                    logger.println("Failed to send request to WhiteSource server: " + e.getMessage());
+                    // not retried while the circuit is open
+                    if (retriesLeft-- <= 0 || !RequestRetry.isRetryable(e)) {
+                        summary.failed(e);
+                        return summary;
+                    }
+                    logger.println("Trying " + (retriesLeft + 1) + " more time" + (retriesLeft != 0 ? "s" : ""));
+                    Thread.sleep(RequestRetry.delay(retriesInterval, attempt));
+                }
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Result of an update request sent by the agent.
+     */
+    public static class Summary implements Serializable {
+
+        private static final long serialVersionUID = 4790617528306398441L;
+
+        private final int dependencies;
+        private boolean sent;
+        private String organization;
+        private List<String> createdProjects = new ArrayList<>();
+        private List<String> updatedProjects = new ArrayList<>();
+        private String requestToken;
+        private String failure;
+
+        private Summary(int dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        private void sent(UpdateInventoryResult result) {
+            sent = true;
+            if (result != null) {
+                organization = result.getOrganization();
+                createdProjects = new ArrayList<>(result.getCreatedProjects());
+                updatedProjects = new ArrayList<>(result.getUpdatedProjects());
+                requestToken = result.getRequestToken();
+            }
+        }
+
+        private void failed(WssServiceException e) {
+            failure = e.getMessage();
+            requestToken = e.getRequestToken();
+        }
+
+        public int getDependencies() {
+            return dependencies;
+        }
+
+        public boolean isSent() {
+            return sent;
+        }
+
+        public String getOrganization() {
+            return organization;
+        }
+
+        public List<String> getCreatedProjects() {
+            return createdProjects;
+        }
+
+        public List<String> getUpdatedProjects() {
+            return updatedProjects;
+        }
+
+        public String getRequestToken() {
+            return requestToken;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+    }
+}
@@ -18,10 +18,21 @@
 
 package org.whitesource.jenkins.extractor.maven;
 
-import hudson.model.Action;
+import hudson.Extension;
+import hudson.maven.MavenBuild;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import jenkins.model.RunAction2;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.jenkins.PolicyCheckReportAction;
 import org.whitesource.jenkins.model.RemoteDependency;
 
-import java.util.Set;
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Records dependencies (including transitive) of a maven module.
@@ -29,26 +40,228 @@ import java.util.Set;
  * @author Yossi Shaul (Original)
  * @author Edo.Shor (White Source)
  */
-public class MavenDependenciesRecord implements Action {
+public class MavenDependenciesRecord implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(MavenDependenciesRecord.class.getName());
+
+    public static final String DISPLAY_NAME = "White Source - dependency trails";
+
+    /**
+     * Number of consecutive deltas after which a full graph is stored again, bounds the cost of resolving a graph.
+     */
+    private static final int MAX_GRAPH_DELTA_CHAIN = 10;
+
     private final Set<RemoteDependency> dependencies;
 
+    /**
+     * Identifies the dependency set of the module, used to detect unchanged modules in incremental builds.
+     */
+    private String fingerprint;
+
+    /**
+     * Dependencies already converted for an update, reused as long as the build stays loaded.
+     */
+    private transient Collection<DependencyInfo> dependencyInfos;
+
+    /**
+     * Full dependency graph, set when no usable previous graph exists.
+     */
+    private MavenDependencyGraph graph;
+
+    /**
+     * Dependency graph stored as changes against the graph of an earlier build of the module.
+     */
+    private MavenDependencyGraph.Delta graphDelta;
+
+    private int graphDeltaChain;
+
+    private transient Run<?, ?> owner;
+
+    private transient MavenDependencyGraph resolvedGraph;
+
     public MavenDependenciesRecord(Set<RemoteDependency> dependencies) {
         this.dependencies = dependencies;
+        this.fingerprint = calculateFingerprint(dependencies);
+    }
+
+    /**
+     * Creates the record of a module build, storing its dependency graph as a delta against the previous build when possible.
+     */
+    public static MavenDependenciesRecord create(MavenBuild build, Set<RemoteDependency> dependencies, MavenDependencyGraph graph) {
+        MavenDependenciesRecord record = new MavenDependenciesRecord(dependencies);
+        record.owner = build;
+        record.resolvedGraph = graph;
+        record.graph = graph;
+
+        MavenBuild previous = build.getPreviousBuild();
+        MavenDependenciesRecord previousRecord = previous == null ? null : previous.getAction(MavenDependenciesRecord.class);
+        if (previousRecord != null && previousRecord.graphDeltaChain < MAX_GRAPH_DELTA_CHAIN) {
+            MavenDependencyGraph previousGraph = previousRecord.getDependencyGraph();
+            if (previousGraph != null) {
+                MavenDependencyGraph.Delta delta = graph.diff(previous.getNumber(), previousGraph);
+                // a delta larger than the graph itself is not worth chaining
+                if (delta.size() < graph.size()) {
+                    record.graph = null;
+                    record.graphDelta = delta;
+                    record.graphDeltaChain = previousRecord.graphDeltaChain + 1;
+                }
+            }
+        }
+        return record;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public void onAttached(Run<?, ?> r) {
+        owner = r;
+    }
+
+    public void onLoad(Run<?, ?> r) {
+        owner = r;
     }
 
     public String getIconFileName() {
-        return null;
+        return hasDependencyGraph() ? PolicyCheckReportAction.ICON_PATH : null;
     }
 
     public String getDisplayName() {
-        return null;
+        return hasDependencyGraph() ? DISPLAY_NAME : null;
     }
 
     public String getUrlName() {
-        return null;
+        return "whitesource-dependencies";
+    }
+
+    /* --- Public methods --- */
+
+    public Run<?, ?> getOwner() {
+        return owner;
     }
 
     public Set<RemoteDependency> getDependencies() {
         return dependencies;
     }
+
+    /**
+     * @return The resolved dependency graph of the module, null for records of older versions or when a build
+     * the graph depends on was deleted.
+     */
+    public synchronized MavenDependencyGraph getDependencyGraph() {
+        if (resolvedGraph == null) {
+            if (graph != null) {
+                resolvedGraph = graph;
+            } else if (graphDelta != null && owner != null) {
+                Run<?, ?> base = owner.getParent().getBuildByNumber(graphDelta.getBaseBuild());
+                MavenDependenciesRecord baseRecord = base == null ? null : base.getAction(MavenDependenciesRecord.class);
+                MavenDependencyGraph baseGraph = baseRecord == null ? null : baseRecord.getDependencyGraph();
+                if (baseGraph != null) {
+                    resolvedGraph = baseGraph.apply(graphDelta);
+                }
+            }
+        }
+        return resolvedGraph;
+    }
+
+    /**
+     * @param id Maven id of the artifact, as in <code>groupId:artifactId:type:version</code>.
+     * @return Trail of artifacts that pulled in the given artifact, down to the artifact itself, empty if unknown.
+     */
+    public List<String> getDependencyPath(String id) {
+        MavenDependencyGraph dependencyGraph = getDependencyGraph();
+        return dependencyGraph == null ? Collections.<String>emptyList() : dependencyGraph.getPath(id);
+    }
+
+    /**
+     * @return Trail of each resolved artifact of the module, sorted by maven id, empty if the graph is unknown.
+     */
+    public SortedMap<String, List<String>> getDependencyPaths() {
+        SortedMap<String, List<String>> paths = new TreeMap<>();
+        MavenDependencyGraph dependencyGraph = getDependencyGraph();
+        if (dependencyGraph != null) {
+            for (String id : dependencyGraph.getIds()) {
+                paths.put(id, dependencyGraph.getPath(id));
+            }
+        }
+        return paths;
+    }
+
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            // records persisted by older versions
+            fingerprint = calculateFingerprint(dependencies);
+        }
+        return fingerprint;
+    }
+
+    public synchronized Collection<DependencyInfo> getDependencyInfos() {
+        if (dependencyInfos == null) {
+            dependencyInfos = Collections.unmodifiableCollection(RemoteDependency.convert(dependencies));
+        }
+        return dependencyInfos;
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * @return True if a graph was recorded, without resolving it.
+     */
+    private boolean hasDependencyGraph() {
+        return graph != null || graphDelta != null;
+    }
+
+    /**
+     * Stores the graph in full when it is a delta against the given build, which is about to be deleted.
+     *
+     * @return True if the record changed.
+     */
+    private synchronized boolean rebase(int deletedBuild) {
+        if (graphDelta == null || graphDelta.getBaseBuild() != deletedBuild) {
+            return false;
+        }
+        // resolved while the base build is still there, null if an earlier build of the chain is already gone
+        graph = getDependencyGraph();
+        graphDelta = null;
+        graphDeltaChain = 0;
+        return true;
+    }
+
+    private static String calculateFingerprint(Set<RemoteDependency> dependencies) {
+        List<String> keys = new ArrayList<>();
+        if (dependencies != null) {
+            for (RemoteDependency dependency : dependencies) {
+                keys.add(StringUtils.join(new String[]{dependency.getGroupId(), dependency.getArtifactId(),
+                        dependency.getVersion(), dependency.getType(), dependency.getClassifier(),
+                        dependency.getScope(), dependency.getSha1()}, ':'));
+            }
+        }
+        Collections.sort(keys);
+        return DigestUtils.sha1Hex(StringUtils.join(keys, '\n'));
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Keeps the graph of a module build resolvable when the build its delta is based on is deleted,
+     * by log rotation or by hand: the next build of the module stores its graph in full before the base goes away.
+     */
+    @Extension
+    public static class Rebaser extends RunListener<MavenBuild> {
+
+        public Rebaser() {
+            super(MavenBuild.class);
+        }
+
+        @Override
+        public void onDeleted(MavenBuild build) {
+            MavenBuild next = build.getNextBuild();
+            MavenDependenciesRecord record = next == null ? null : next.getAction(MavenDependenciesRecord.class);
+            if (record != null && record.rebase(build.getNumber())) {
+                try {
+                    next.save();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to save the dependency graph of " + next, e);
+                }
+            }
+        }
+    }
 }
@@ -29,8 +29,9 @@ import org.whitesource.jenkins.model.RemoteDependency;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Records dependencies used during the build.
@@ -43,20 +44,39 @@ public class MavenDependenciesRecorder extends MavenReporter {
     /* --- Static members --- */
 	
 	private static final long serialVersionUID = 9107918530513865446L;
+
+    private static final int HASH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * Shared by all modules of the reactor, lives in the Maven JVM.
+     */
+    private static ExecutorService hashExecutor;
 	
 	/* --- Members --- */
 	
 	/**
-     * All dependencies this module used, including transitive ones.
+     * All dependencies this module used, including transitive ones, keyed by their file.
+     */
+    private transient Map<String, RemoteDependency> dependencies;
+
+    /**
+     * Hash calculations enqueued for this module that may still be running.
+     */
+    private transient List<Future<?>> pendingHashes;
+
+    /**
+     * Resolved graph nodes keyed by artifact id, each holding its scope and the id of the artifact that pulled it in.
      */
-    private transient Set<RemoteDependency> dependencies;
+    private transient Map<String, String[]> graphNodes;
 
     /* --- Concrete implementation methods --- */
 
     @Override
     public boolean preBuild(MavenBuildProxy build, MavenProject pom, BuildListener listener) {
         listener.getLogger().println("[Jenkins] Collecting dependencies info");
-        dependencies = new HashSet<>();
+        dependencies = new LinkedHashMap<>();
+        pendingHashes = new ArrayList<>();
+        graphNodes = new LinkedHashMap<>();
         return true;
     }
 
@@ -71,11 +91,14 @@ public class MavenDependenciesRecorder extends MavenReporter {
     }
 
     /**
-     * Sends the collected dependencies over to the master and record them.
+     * Waits for the outstanding hash calculations, then sends the collected dependencies over to the master and record them.
      */
     @Override
     public boolean postBuild(MavenBuildProxy build, MavenProject pom, BuildListener listener)
             throws InterruptedException, IOException {
+        awaitPendingHashes(listener);
+        final Set<RemoteDependency> collected = new HashSet<>(dependencies.values());
+        final MavenDependencyGraph collectedGraph = buildGraph();
         build.executeAsync(new BuildCallable<Void, IOException>() {
             
         	/* --- Static members --- */
@@ -84,7 +107,8 @@ public class MavenDependenciesRecorder extends MavenReporter {
 			/* --- Members --- */
 			
 			// record is transient, so needs to make a copy first
-            private final Set<RemoteDependency> d = dependencies;
+            private final Set<RemoteDependency> d = collected;
+            private final MavenDependencyGraph g = collectedGraph;
             
             /* --- Interface implementation methods --- */
 
@@ -92,7 +116,7 @@ public class MavenDependenciesRecorder extends MavenReporter {
                 // add the action
                 //These actions are persisted into the build.xml of each build run - we need another
                 //context to store these actions
-                build.getActions().add(new MavenDependenciesRecord(d));
+                build.addAction(MavenDependenciesRecord.create(build, d, g));
                 return null;
             }
         });
@@ -106,6 +130,11 @@ public class MavenDependenciesRecorder extends MavenReporter {
             for (Artifact dependency : artifacts) {
                 File dependencyFile = dependency.getFile();
                 if (dependency.isResolved() && dependencyFile != null) {
+                    // mojos share most of their artifacts, hash each file only once
+                    String key = dependencyFile.getAbsolutePath();
+                    if (dependencies.containsKey(key)) {
+                        continue;
+                    }
                 	RemoteDependency info = new RemoteDependency();
                 	info.setGroupId(dependency.getGroupId());
 					info.setArtifactId(dependency.getArtifactId());
@@ -116,21 +145,89 @@ public class MavenDependenciesRecorder extends MavenReporter {
 					info.setSystemPath(dependencyFile.getName());
 					
 					if (dependencyFile.exists()) {
-						try {
-                            info.setSha1(ChecksumUtils.calculateSHA1(dependencyFile));
-                        } catch (IOException e) {
-                            // ignore
-                        }
+                        pendingHashes.add(getHashExecutor().submit(new Sha1Task(info, dependencyFile)));
 					}
                 	
-                    dependencies.add(info);
+                    dependencies.put(key, info);
+                    recordGraphNode(dependency);
                 }
             }
         }
     }
+
+    private void recordGraphNode(Artifact dependency) {
+        String id = dependency.getId();
+        if (!graphNodes.containsKey(id)) {
+            // the trail starts with the module itself and ends with the artifact
+            List<String> trail = dependency.getDependencyTrail();
+            String parentId = trail != null && trail.size() > 2 ? trail.get(trail.size() - 2) : null;
+            graphNodes.put(id, new String[]{dependency.getScope(), parentId});
+        }
+    }
+
+    private MavenDependencyGraph buildGraph() {
+        List<String> ids = new ArrayList<>(graphNodes.size());
+        List<String> scopes = new ArrayList<>(graphNodes.size());
+        List<String> parentIds = new ArrayList<>(graphNodes.size());
+        for (Map.Entry<String, String[]> node : graphNodes.entrySet()) {
+            ids.add(node.getKey());
+            scopes.add(node.getValue()[0]);
+            parentIds.add(node.getValue()[1]);
+        }
+        return new MavenDependencyGraph(ids, scopes, parentIds);
+    }
+
+    private void awaitPendingHashes(BuildListener listener) throws InterruptedException {
+        for (Future<?> pendingHash : pendingHashes) {
+            try {
+                pendingHash.get();
+            } catch (ExecutionException e) {
+                listener.getLogger().println("[Jenkins] Failed to calculate dependency hash: " + e.getCause());
+            }
+        }
+        pendingHashes.clear();
+    }
+
+    private static synchronized ExecutorService getHashExecutor() {
+        if (hashExecutor == null) {
+            hashExecutor = Executors.newFixedThreadPool(HASH_THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WhiteSource dependency hashing " + count.incrementAndGet());
+                    // never keep the maven process alive
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return hashExecutor;
+    }
     
     /* --- Nested classes --- */
 
+    /**
+     * Calculates the SHA-1 of a resolved artifact off the build thread.
+     */
+    private static final class Sha1Task implements Runnable {
+
+        private final RemoteDependency info;
+        private final File file;
+
+        Sha1Task(RemoteDependency info, File file) {
+            this.info = info;
+            this.file = file;
+        }
+
+        public void run() {
+            try {
+                info.setSha1(ChecksumUtils.calculateSHA1(file));
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
     @Extension
     public static final class DescriptorImpl extends MavenReporterDescriptor {
     	
@@ -0,0 +1,193 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Resolved dependency graph of a maven module.
+ * <p>
+ * Maven resolves every artifact through a single trail, so the graph is a tree kept as an adjacency array:
+ * each node holds the index of the node that pulled it in, or {@link #ROOT} for direct dependencies of the module.
+ */
+public class MavenDependencyGraph implements Serializable {
+
+    /* --- Static members --- */
+
+    private static final long serialVersionUID = 4590725335426717113L;
+
+    public static final int ROOT = -1;
+
+    /* --- Members --- */
+
+    private final String[] ids;
+    private final String[] scopes;
+    private final int[] parents;
+
+    private transient Map<String, Integer> index;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param ids       maven ids of the resolved artifacts.
+     * @param scopes    scope of each artifact.
+     * @param parentIds id of the artifact that pulled in each artifact, null for direct dependencies.
+     */
+    public MavenDependencyGraph(List<String> ids, List<String> scopes, List<String> parentIds) {
+        this.ids = ids.toArray(new String[ids.size()]);
+        this.scopes = scopes.toArray(new String[scopes.size()]);
+        this.parents = new int[this.ids.length];
+        Map<String, Integer> index = index();
+        for (int i = 0; i < parents.length; i++) {
+            Integer parent = parentIds.get(i) == null ? null : index.get(parentIds.get(i));
+            parents[i] = parent == null ? ROOT : parent;
+        }
+    }
+
+    /* --- Public methods --- */
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return Maven ids of the resolved artifacts.
+     */
+    public List<String> getIds() {
+        return Collections.unmodifiableList(Arrays.asList(ids));
+    }
+
+    public boolean contains(String id) {
+        return index().containsKey(id);
+    }
+
+    public String getScope(String id) {
+        Integer node = index().get(id);
+        return node == null ? null : scopes[node];
+    }
+
+    /**
+     * @return Id of the artifact that pulled in the given one, null for direct dependencies or unknown artifacts.
+     */
+    public String getParent(String id) {
+        Integer node = index().get(id);
+        return node == null || parents[node] == ROOT ? null : ids[parents[node]];
+    }
+
+    /**
+     * @return Trail of artifacts from the direct dependency of the module down to the given artifact, empty if unknown.
+     */
+    public List<String> getPath(String id) {
+        LinkedList<String> path = new LinkedList<>();
+        Integer node = index().get(id);
+        // guard against cycles in corrupted data
+        for (int hops = 0; node != null && node != ROOT && hops <= ids.length; hops++) {
+            path.addFirst(ids[node]);
+            node = parents[node];
+        }
+        return path;
+    }
+
+    /**
+     * @return Changes turning the base graph into this one.
+     */
+    public Delta diff(int baseBuild, MavenDependencyGraph base) {
+        List<String> removed = new ArrayList<>();
+        for (String id : base.ids) {
+            if (!contains(id)) {
+                removed.add(id);
+            }
+        }
+
+        List<String> addedIds = new ArrayList<>();
+        List<String> addedScopes = new ArrayList<>();
+        List<String> addedParents = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            String id = ids[i];
+            String parent = parents[i] == ROOT ? null : ids[parents[i]];
+            if (!base.contains(id) || !equal(scopes[i], base.getScope(id)) || !equal(parent, base.getParent(id))) {
+                if (base.contains(id)) {
+                    removed.add(id);
+                }
+                addedIds.add(id);
+                addedScopes.add(scopes[i]);
+                addedParents.add(parent);
+            }
+        }
+        return new Delta(baseBuild, removed, addedIds, addedScopes, addedParents);
+    }
+
+    /**
+     * @return The graph obtained by applying the delta on this one.
+     */
+    public MavenDependencyGraph apply(Delta delta) {
+        Set<String> removed = new HashSet<>(Arrays.asList(delta.removed));
+        List<String> newIds = new ArrayList<>();
+        List<String> newScopes = new ArrayList<>();
+        List<String> newParents = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (!removed.contains(ids[i])) {
+                newIds.add(ids[i]);
+                newScopes.add(scopes[i]);
+                newParents.add(parents[i] == ROOT ? null : ids[parents[i]]);
+            }
+        }
+        newIds.addAll(Arrays.asList(delta.addedIds));
+        newScopes.addAll(Arrays.asList(delta.addedScopes));
+        newParents.addAll(Arrays.asList(delta.addedParents));
+        return new MavenDependencyGraph(newIds, newScopes, newParents);
+    }
+
+    /* --- Private methods --- */
+
+    private Map<String, Integer> index() {
+        if (index == null) {
+            Map<String, Integer> map = new HashMap<>(ids.length * 2);
+            for (int i = 0; i < ids.length; i++) {
+                map.put(ids[i], i);
+            }
+            index = map;
+        }
+        return index;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Changes of a module graph relative to the graph of an earlier build of the same module.
+     */
+    public static class Delta implements Serializable {
+
+        private static final long serialVersionUID = -6377406101398335790L;
+
+        private final int baseBuild;
+        private final String[] removed;
+        private final String[] addedIds;
+        private final String[] addedScopes;
+        private final String[] addedParents;
+
+        private Delta(int baseBuild, List<String> removed, List<String> addedIds, List<String> addedScopes, List<String> addedParents) {
+            this.baseBuild = baseBuild;
+            this.removed = removed.toArray(new String[removed.size()]);
+            this.addedIds = addedIds.toArray(new String[addedIds.size()]);
+            this.addedScopes = addedScopes.toArray(new String[addedScopes.size()]);
+            this.addedParents = addedParents.toArray(new String[addedParents.size()]);
+        }
+
+        public int getBaseBuild() {
+            return baseBuild;
+        }
+
+        /**
+         * @return Number of changed nodes.
+         */
+        public int size() {
+            return removed.length + addedIds.length;
+        }
+    }
+}
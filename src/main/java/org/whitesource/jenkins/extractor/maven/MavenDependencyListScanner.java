@@ -0,0 +1,357 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.hash.ChecksumUtils;
+import org.whitesource.jenkins.model.RemoteDependency;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the dependencies resolved by the maven build instead of resolving and scanning the workspace again.
+ * <p>
+ * Two outputs of the build are read:
+ * <ul>
+ * <li>The spy logs written by the Pipeline Maven plugin (<code>withMaven</code>) to the temporary folder of the workspace,
+ * while the step runs within the <code>withMaven</code> block. Each built project is a module named after its artifact id,
+ * its artifacts are hashed from the files maven resolved.</li>
+ * <li>The dependency lists written by <code>mvn dependency:list -DoutputFile=...</code>. Each list file describes
+ * the module of the folder it is written to, relative to its <code>target</code> folder. Artifacts are hashed from
+ * the path written by <code>-DoutputAbsoluteArtifactFilename=true</code>, or from the local repository of the agent.</li>
+ * </ul>
+ */
+public class MavenDependencyListScanner extends MasterToSlaveFileCallable<Map<String, Collection<RemoteDependency>>> {
+
+    /* --- Static members --- */
+
+    private static final long serialVersionUID = -1937542120452683806L;
+
+    public static final String SPY_LOGS = "**/maven-spy-*.log";
+
+    private static final String WORKSPACE_TMP_SUFFIX = "@tmp";
+
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[;\\d]*m");
+    private static final Pattern REPO_LOCAL_OPTION = Pattern.compile("-Dmaven\\.repo\\.local=(\"[^\"]+\"|\\S+)");
+    private static final Pattern LOCAL_REPOSITORY = Pattern.compile("<localRepository>\\s*([^<]+?)\\s*</localRepository>");
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{(user\\.home|env\\.([^}]+))}");
+    private static final String MODULE_SUFFIX = " -- ";
+    private static final String OPTIONAL_SUFFIX = "(optional)";
+    private static final String TARGET_FOLDER = "target";
+    private static final Set<String> SCOPES = new HashSet<>(Arrays.asList("compile", "provided", "runtime", "test", "system", "import"));
+    private static final int MIN_TOKENS = 4;
+
+    /* --- Members --- */
+
+    private final String includes;
+
+    private final TaskListener listener;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param includes Ant style pattern of the dependency list files.
+     * @param listener
+     */
+    public MavenDependencyListScanner(String includes, TaskListener listener) {
+        this.includes = includes;
+        this.listener = listener;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public Map<String, Collection<RemoteDependency>> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+        Map<String, Map<String, RemoteDependency>> modules = new LinkedHashMap<>();
+
+        List<FilePath> spyLogs = new ArrayList<>();
+        File workspaceTmp = new File(f.getParentFile(), f.getName() + WORKSPACE_TMP_SUFFIX);
+        for (File folder : Arrays.asList(f, workspaceTmp)) {
+            if (folder.isDirectory()) {
+                spyLogs.addAll(Arrays.asList(new FilePath(folder).list(SPY_LOGS)));
+            }
+        }
+        for (FilePath spyLog : spyLogs) {
+            parseSpyLog(new File(spyLog.getRemote()), modules);
+        }
+
+        FilePath[] listFiles = new FilePath(f).list(includes);
+        if (listFiles.length > 0) {
+            File localRepository = localRepository();
+            for (FilePath listFile : listFiles) {
+                File file = new File(listFile.getRemote());
+                parse(file, localRepository, module(modules, moduleName(f, file)));
+            }
+        }
+
+        Map<String, Collection<RemoteDependency>> dependencies = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, RemoteDependency>> module : modules.entrySet()) {
+            if (!module.getValue().isEmpty()) {
+                // sent back from the agent, a values view is not serializable
+                dependencies.put(module.getKey(), new ArrayList<>(module.getValue().values()));
+            }
+        }
+
+        if (dependencies.isEmpty()) {
+            listener.getLogger().println("No maven build output found: no Pipeline Maven spy logs (" + SPY_LOGS +
+                    ") in the workspace or its temporary folder, and no dependency lists matching " + includes + ". " +
+                    "Run the WhiteSource step within the withMaven block, or have the build write the dependency lists with " +
+                    "'mvn dependency:list -DoutputFile=target/dependency-list.txt -DoutputAbsoluteArtifactFilename=true'.");
+        } else {
+            listener.getLogger().println("Found " + dependencies.size() + " maven modules in " + spyLogs.size() +
+                    " spy logs and " + listFiles.length + " dependency lists.");
+        }
+        return dependencies;
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Reads the dependencies resolved for each project built, as recorded by the maven spy.
+     * Projects built in parallel (<code>-T</code>) may have their dependencies attributed to the project started last.
+     */
+    private void parseSpyLog(File spyLog, Map<String, Map<String, RemoteDependency>> modules) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream in = new FileInputStream(spyLog)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                Map<String, RemoteDependency> module = null;
+                boolean projectStarted = false;
+                boolean resolvedDependencies = false;
+                RemoteDependency dependency = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("ExecutionEvent".equals(name)) {
+                            projectStarted = "ProjectStarted".equals(reader.getAttributeValue(null, "type"));
+                        } else if ("project".equals(name) && projectStarted) {
+                            String artifactId = reader.getAttributeValue(null, "artifactId");
+                            module = StringUtils.isBlank(artifactId) ? null : module(modules, artifactId);
+                        } else if ("resolvedDependencies".equals(name)) {
+                            resolvedDependencies = true;
+                        } else if ("dependency".equals(name) && resolvedDependencies && module != null) {
+                            dependency = new RemoteDependency();
+                            dependency.setGroupId(reader.getAttributeValue(null, "groupId"));
+                            dependency.setArtifactId(reader.getAttributeValue(null, "artifactId"));
+                            dependency.setType(reader.getAttributeValue(null, "type"));
+                            dependency.setClassifier(StringUtils.trimToNull(reader.getAttributeValue(null, "classifier")));
+                            dependency.setVersion(reader.getAttributeValue(null, "version"));
+                            dependency.setScope(reader.getAttributeValue(null, "scope"));
+                        } else if ("file".equals(name) && dependency != null) {
+                            hash(dependency, new File(reader.getElementText().trim()));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("ExecutionEvent".equals(name)) {
+                            projectStarted = false;
+                        } else if ("resolvedDependencies".equals(name)) {
+                            resolvedDependencies = false;
+                        } else if ("dependency".equals(name) && dependency != null) {
+                            add(module, dependency);
+                            dependency = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // a build still running or killed leaves the log unterminated, what was read is kept
+            listener.getLogger().println("Stopped reading maven spy log " + spyLog.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void parse(File listFile, File localRepository, Map<String, RemoteDependency> module) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(listFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                RemoteDependency dependency = parseLine(line, localRepository);
+                if (dependency != null) {
+                    add(module, dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses <code>groupId:artifactId:type[:classifier]:version:scope[:path]</code>, ignores any other line.
+     */
+    private RemoteDependency parseLine(String line, File localRepository) {
+        String entry = ANSI_ESCAPE.matcher(line).replaceAll("").trim();
+        int moduleSuffix = entry.indexOf(MODULE_SUFFIX);
+        if (moduleSuffix > 0) {
+            entry = entry.substring(0, moduleSuffix).trim();
+        }
+        if (entry.endsWith(OPTIONAL_SUFFIX)) {
+            entry = entry.substring(0, entry.length() - OPTIONAL_SUFFIX.length()).trim();
+        }
+        if (entry.contains(" ")) {
+            return null;
+        }
+
+        String[] tokens = entry.split(":");
+        int scopeIndex = -1;
+        for (int i = MIN_TOKENS; i < tokens.length && scopeIndex < 0; i++) {
+            if (SCOPES.contains(tokens[i])) {
+                scopeIndex = i;
+            }
+        }
+        if (scopeIndex < 0 || scopeIndex > MIN_TOKENS + 1) {
+            return null;
+        }
+
+        RemoteDependency dependency = new RemoteDependency();
+        dependency.setGroupId(tokens[0]);
+        dependency.setArtifactId(tokens[1]);
+        dependency.setType(tokens[2]);
+        if (scopeIndex == MIN_TOKENS + 1) {
+            dependency.setClassifier(tokens[3]);
+        }
+        dependency.setVersion(tokens[scopeIndex - 1]);
+        dependency.setScope(tokens[scopeIndex]);
+
+        File artifact;
+        if (scopeIndex < tokens.length - 1) {
+            // the absolute path may itself contain colons (windows drives)
+            artifact = new File(StringUtils.join(tokens, ':', scopeIndex + 1, tokens.length));
+        } else {
+            artifact = localRepositoryFile(localRepository, dependency);
+        }
+        hash(dependency, artifact);
+        return dependency;
+    }
+
+    private void hash(RemoteDependency dependency, File artifact) {
+        dependency.setSystemPath(artifact.getName());
+        if (artifact.isFile()) {
+            try {
+                dependency.setSha1(ChecksumUtils.calculateSHA1(artifact));
+            } catch (IOException e) {
+                listener.getLogger().println("Error calculating SHA-1 for " + artifact.getName());
+            }
+        }
+    }
+
+    /**
+     * @return The local repository of the agent: <code>maven.repo.local</code>, as a system property or in
+     * <code>MAVEN_OPTS</code>, else the <code>localRepository</code> of the user or global settings, else the default.
+     */
+    private File localRepository() {
+        String path = System.getProperty("maven.repo.local");
+        if (StringUtils.isBlank(path)) {
+            String mavenOpts = System.getenv("MAVEN_OPTS");
+            Matcher matcher = REPO_LOCAL_OPTION.matcher(StringUtils.defaultString(mavenOpts));
+            if (matcher.find()) {
+                path = StringUtils.strip(matcher.group(1), "\"");
+            }
+        }
+        File userHome = new File(System.getProperty("user.home"));
+        if (StringUtils.isBlank(path)) {
+            path = settingsLocalRepository(new File(userHome, ".m2" + File.separator + "settings.xml"));
+        }
+        if (StringUtils.isBlank(path)) {
+            for (String mavenHome : Arrays.asList(System.getenv("MAVEN_HOME"), System.getenv("M2_HOME"))) {
+                if (StringUtils.isBlank(path) && StringUtils.isNotBlank(mavenHome)) {
+                    path = settingsLocalRepository(new File(mavenHome, "conf" + File.separator + "settings.xml"));
+                }
+            }
+        }
+        if (StringUtils.isBlank(path)) {
+            return new File(userHome, ".m2" + File.separator + "repository");
+        }
+        return new File(path);
+    }
+
+    private String settingsLocalRepository(File settings) {
+        if (!settings.isFile()) {
+            return null;
+        }
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(settings), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("Failed to read maven settings " + settings + ": " + e.getMessage());
+            return null;
+        }
+        // commented out examples are not settings
+        String uncommented = content.toString().replaceAll("(?s)<!--.*?-->", "");
+        Matcher matcher = LOCAL_REPOSITORY.matcher(uncommented);
+        if (!matcher.find()) {
+            return null;
+        }
+        Matcher property = PROPERTY.matcher(matcher.group(1));
+        StringBuffer path = new StringBuffer();
+        while (property.find()) {
+            String value = property.group(2) == null ? System.getProperty("user.home") : System.getenv(property.group(2));
+            property.appendReplacement(path, Matcher.quoteReplacement(StringUtils.defaultString(value)));
+        }
+        property.appendTail(path);
+        return path.toString();
+    }
+
+    private static File localRepositoryFile(File localRepository, RemoteDependency dependency) {
+        StringBuilder name = new StringBuilder(dependency.getArtifactId()).append('-').append(dependency.getVersion());
+        if (StringUtils.isNotBlank(dependency.getClassifier())) {
+            name.append('-').append(dependency.getClassifier());
+        }
+        name.append('.').append("test-jar".equals(dependency.getType()) ? "jar" : dependency.getType());
+
+        File folder = new File(localRepository, dependency.getGroupId().replace('.', File.separatorChar));
+        folder = new File(new File(folder, dependency.getArtifactId()), dependency.getVersion());
+        return new File(folder, name.toString());
+    }
+
+    private static Map<String, RemoteDependency> module(Map<String, Map<String, RemoteDependency>> modules, String name) {
+        Map<String, RemoteDependency> module = modules.get(name);
+        if (module == null) {
+            module = new LinkedHashMap<>();
+            modules.put(name, module);
+        }
+        return module;
+    }
+
+    private static void add(Map<String, RemoteDependency> module, RemoteDependency dependency) {
+        String key = StringUtils.join(new String[]{dependency.getGroupId(), dependency.getArtifactId(),
+                dependency.getType(), dependency.getClassifier(), dependency.getVersion()}, ':');
+        if (!module.containsKey(key)) {
+            module.put(key, dependency);
+        }
+    }
+
+    /**
+     * @return Path of the module folder relative to the workspace, or the workspace name for the root module.
+     */
+    private static String moduleName(File workspace, File listFile) {
+        File folder = listFile.getParentFile();
+        if (folder != null && TARGET_FOLDER.equals(folder.getName())) {
+            folder = folder.getParentFile();
+        }
+        String root = workspace.getAbsolutePath();
+        if (folder == null || !folder.getAbsolutePath().startsWith(root + File.separator)) {
+            return workspace.getName();
+        }
+        return folder.getAbsolutePath().substring(root.length() + 1).replace(File.separatorChar, '/');
+    }
+}
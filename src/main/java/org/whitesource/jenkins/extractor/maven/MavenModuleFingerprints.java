@@ -0,0 +1,68 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import hudson.maven.MavenModuleSetBuild;
+import hudson.model.Action;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the dependency fingerprint of each module that was sent to White Source by a maven build.
+ */
+public class MavenModuleFingerprints implements Action {
+
+    /* --- Static members --- */
+
+    /**
+     * Avoid loading the whole build history of jobs that never updated White Source.
+     */
+    private static final int MAX_LOOKBACK = 10;
+
+    /* --- Members --- */
+
+    private final Map<String, String> fingerprints;
+
+    /* --- Constructors --- */
+
+    public MavenModuleFingerprints(Map<String, String> fingerprints) {
+        this.fingerprints = new HashMap<>(fingerprints);
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return Fingerprints of the closest previous build that updated White Source, empty if there is none.
+     */
+    public static Map<String, String> lastUpdated(MavenModuleSetBuild build) {
+        MavenModuleSetBuild previous = build.getPreviousBuild();
+        for (int i = 0; previous != null && i < MAX_LOOKBACK; i++) {
+            MavenModuleFingerprints action = previous.getAction(MavenModuleFingerprints.class);
+            if (action != null) {
+                return action.getFingerprints();
+            }
+            previous = previous.getPreviousBuild();
+        }
+        return Collections.emptyMap();
+    }
+
+    /* --- Interface implementation methods --- */
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    /* --- Getters --- */
+
+    public Map<String, String> getFingerprints() {
+        return Collections.unmodifiableMap(fingerprints);
+    }
+}
@@ -12,7 +12,7 @@ import org.whitesource.agent.api.model.Coordinates;
 import org.whitesource.agent.api.model.DependencyInfo;
 import org.whitesource.jenkins.WssUtils;
 import org.whitesource.jenkins.extractor.BaseOssInfoExtractor;
-import org.whitesource.jenkins.model.RemoteDependency;
+import org.whitesource.jenkins.extractor.PatternSetMatcher;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -35,6 +35,17 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
 
     private final boolean ignorePomModules;
 
+    private final boolean skipUnchangedModules;
+
+    private final PatternSetMatcher includeMatcher;
+
+    private final PatternSetMatcher excludeMatcher;
+
+    /**
+     * Dependency fingerprints of the modules taken by the last extraction.
+     */
+    private final Map<String, String> fingerprints = new HashMap<>();
+
     /* --- Constructors--- */
 
     public MavenOssInfoExtractor(String includes,
@@ -43,12 +54,16 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
                                  TaskListener listener,
                                  Secret mavenProjectToken,
                                  Secret moduleTokens,
-                                 boolean ignorePomModules) {
+                                 boolean ignorePomModules,
+                                 boolean skipUnchangedModules) {
         super(includes, excludes, mavenModuleSetBuild, listener);
 
         this.mavenModuleSetBuild = mavenModuleSetBuild;
         this.mavenProjectToken = mavenProjectToken;
         this.ignorePomModules = ignorePomModules;
+        this.skipUnchangedModules = skipUnchangedModules;
+        this.includeMatcher = PatternSetMatcher.compile(this.includes);
+        this.excludeMatcher = PatternSetMatcher.compile(this.excludes);
         this.moduleTokens = WssUtils.splitParametersMap(Secret.toString(moduleTokens));
     }
 
@@ -60,11 +75,26 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
         Collection<AgentProjectInfo> projectInfos = new ArrayList<AgentProjectInfo>();
 
         Map<MavenModule, MavenBuild> moduleLastBuilds = mavenModuleSetBuild.getModuleLastBuilds();
+        Map<String, String> lastUpdated = skipUnchangedModules ?
+                MavenModuleFingerprints.lastUpdated(mavenModuleSetBuild) : Collections.<String, String>emptyMap();
+        fingerprints.clear();
         for (Map.Entry<MavenModule, MavenBuild> entry : moduleLastBuilds.entrySet()) {
             MavenBuild moduleBuild = entry.getValue();
 
             MavenArtifactRecord action = moduleBuild.getAction(MavenArtifactRecord.class);
             if (shouldProcess(action)) {
+                String moduleKey = entry.getKey().getModuleName().toString();
+                MavenDependenciesRecord dependenciesAction = moduleBuild.getAction(MavenDependenciesRecord.class);
+                if (dependenciesAction != null) {
+                    String fingerprint = dependenciesAction.getFingerprint();
+                    fingerprints.put(moduleKey, fingerprint);
+                    // modules that were not part of this (incremental) build and did not change since the last update
+                    if (skipUnchangedModules && !isRebuilt(moduleBuild) && fingerprint.equals(lastUpdated.get(moduleKey))) {
+                        logger.println("Skipping unchanged module: " + action.pomArtifact.canonicalName);
+                        continue;
+                    }
+                }
+
                 logger.println("Processing " + action.pomArtifact.canonicalName);
                 AgentProjectInfo projectInfo = new AgentProjectInfo();
 
@@ -83,13 +113,12 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
 
                 // dependencies
                 Collection<DependencyInfo> dependencyInfos = projectInfo.getDependencies();
-                MavenDependenciesRecord dependenciesAction = moduleBuild.getAction(MavenDependenciesRecord.class);
                 if (dependenciesAction == null) {
                     logger.println("No dependencies found.");
                 } else {
-                    Set<RemoteDependency> dependencies = dependenciesAction.getDependencies();
-                    dependencyInfos.addAll(RemoteDependency.convert(dependencies));
-                    logger.println("Found " + dependencies.size() + " dependencies (transitive included)");
+                    // converted once per record, stale module builds hand back the previous result as-is
+                    dependencyInfos.addAll(dependenciesAction.getDependencyInfos());
+                    logger.println("Found " + dependencyInfos.size() + " dependencies (transitive included)");
                 }
                 projectInfos.add(projectInfo);
             } else {
@@ -107,8 +136,20 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
         return StringUtils.isBlank(name) ? rootModule.getModuleName().artifactId : name;
     }
 
+    /**
+     * @return Dependency fingerprints of the modules taken by the last call to {@link #extract()}, skipped unchanged modules included.
+     */
+    public Map<String, String> getFingerprints() {
+        return fingerprints;
+    }
+
     /* --- Private methods --- */
 
+    private boolean isRebuilt(MavenBuild moduleBuild) {
+        MavenModuleSetBuild parentBuild = moduleBuild.getParentBuild();
+        return parentBuild != null && parentBuild.getNumber() == mavenModuleSetBuild.getNumber();
+    }
+
     private boolean shouldProcess(MavenArtifactRecord action) {
         if (action == null) {
             return false;
@@ -120,24 +161,12 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor {
         String type = action.mainArtifact.type;
         if (ignorePomModules && "pom".equals(type)) { // always true when maven is not producing artifacts due to goal < package.
             process = false;
-        } else if (!excludes.isEmpty() && matchAny(artifactId, excludes)) {
+        } else if (excludeMatcher.matches(artifactId)) {
             process = false;
-        } else if (!includes.isEmpty() && matchAny(artifactId, includes)) {
+        } else if (includeMatcher.matches(artifactId)) {
             process = true;
         }
 
         return process;
     }
-
-    private boolean matchAny(String value, List<String> patterns) {
-        boolean match = false;
-
-        Iterator<String> it = patterns.iterator();
-        while (it.hasNext() && !match) {
-            String regex = it.next().replace(".", "\\.").replace("*", ".*");
-            match = value.matches(regex);
-        }
-
-        return match;
-    }
 }
@@ -0,0 +1,102 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.jenkins.extractor.BaseOssInfoExtractor;
+import org.whitesource.jenkins.model.RemoteDependency;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Future;
+
+/**
+ * Concrete implementation for collecting open source info from pipeline jobs running maven,
+ * based on the Pipeline Maven spy logs and the dependency lists written by the build.
+ */
+public class MavenPipelineOssInfoExtractor extends BaseOssInfoExtractor {
+
+    /* --- Static members --- */
+
+    public static final String DEFAULT_DEPENDENCY_LISTS = "**/target/dependency-list.txt";
+
+    /* --- Members --- */
+
+    private final Secret projectToken;
+    private final String productVersion;
+    private final FilePath workspace;
+
+    /* --- Constructors --- */
+
+    public MavenPipelineOssInfoExtractor(String dependencyLists,
+                                         Run<?, ?> run,
+                                         TaskListener listener,
+                                         Secret projectToken,
+                                         String productVersion,
+                                         FilePath workspace) {
+        super(StringUtils.isBlank(dependencyLists) ? DEFAULT_DEPENDENCY_LISTS : dependencyLists, null, run, listener);
+        this.projectToken = projectToken;
+        this.productVersion = productVersion;
+        this.workspace = workspace;
+    }
+
+    /* --- Concrete implementation methods --- */
+
+    /**
+     * @return One project per maven module found in the build output, empty if the build left none.
+     */
+    @Override
+    public Collection<AgentProjectInfo> extract() throws InterruptedException, IOException {
+        if (workspace == null) {
+            throw new RuntimeException("Failed to acquire the Build's workspace");
+        }
+        return toProjectInfos(workspace.act(createScanner()));
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Starts reading the dependency lists without waiting for the agent to complete.
+     *
+     * @return The dependencies of each module, to be turned to projects with {@link #toProjectInfos(Map)}.
+     */
+    public Future<Map<String, Collection<RemoteDependency>>> extractAsync() throws InterruptedException, IOException {
+        if (workspace == null) {
+            throw new RuntimeException("Failed to acquire the Build's workspace");
+        }
+        return workspace.actAsync(createScanner());
+    }
+
+    public Collection<AgentProjectInfo> toProjectInfos(Map<String, Collection<RemoteDependency>> modules) {
+        Collection<AgentProjectInfo> projectInfos = new ArrayList<>();
+        for (Map.Entry<String, Collection<RemoteDependency>> module : modules.entrySet()) {
+            AgentProjectInfo projectInfo = new AgentProjectInfo();
+            projectInfo.setCoordinates(new Coordinates(null, module.getKey(), productVersion));
+            // as for maven jobs, the project token only names the project of a single module build
+            if (modules.size() == 1 && StringUtils.isNotBlank(Secret.toString(projectToken))) {
+                projectInfo.setProjectToken(Secret.toString(projectToken));
+            }
+
+            List<DependencyInfo> dependencies = projectInfo.getDependencies();
+            if (dependencies == null) {
+                dependencies = new ArrayList<>();
+                projectInfo.setDependencies(dependencies);
+            }
+            dependencies.addAll(RemoteDependency.convert(module.getValue()));
+            listener.getLogger().println("Found " + dependencies.size() + " dependencies in module " + module.getKey());
+            projectInfos.add(projectInfo);
+        }
+        return projectInfos;
+    }
+
+    /* --- Private methods --- */
+
+    private MavenDependencyListScanner createScanner() {
+        return new MavenDependencyListScanner(StringUtils.join(includes, ","), listener);
+    }
+}
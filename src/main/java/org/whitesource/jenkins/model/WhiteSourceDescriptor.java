@@ -27,6 +27,21 @@ public class WhiteSourceDescriptor {
     private String connectionTimeout;
     private String connectionRetries;
     private String connectionRetriesInterval;
+    private String updateBatchSize;
+    private String updateBatchMaxSize;
+    private String updateConcurrency;
+    private boolean deferredUpload;
+    private String policyCacheTtl;
+    private String coalesceWindow;
+    private boolean coalesceLastWriterWins;
+    private boolean agentSideUpload;
+    private boolean optimisticUpdate;
+    private boolean earlyRejection;
+    private String policySnapshotRefresh;
+    private String stepTimeout;
+    private String scanTimeout;
+    private String policyCheckTimeout;
+    private String updateTimeout;
 
     /* --- Constructors --- */
 
@@ -44,7 +59,22 @@ public class WhiteSourceDescriptor {
         this.password = descriptor.getPassword();
         this.connectionTimeout = descriptor.getConnectionTimeout();
         this.connectionRetries = descriptor.getConnectionRetries() ==  null ? "1" : descriptor.getConnectionRetries();
-        this.connectionRetriesInterval = descriptor.getConnectionRetriesInterval() ==  null ? "30" : descriptor.getConnectionRetries();
+        this.connectionRetriesInterval = descriptor.getConnectionRetriesInterval() ==  null ? "30" : descriptor.getConnectionRetriesInterval();
+        this.updateBatchSize = descriptor.getUpdateBatchSize() == null ? "0" : descriptor.getUpdateBatchSize();
+        this.updateBatchMaxSize = descriptor.getUpdateBatchMaxSize() == null ? "0" : descriptor.getUpdateBatchMaxSize();
+        this.updateConcurrency = descriptor.getUpdateConcurrency() == null ? "1" : descriptor.getUpdateConcurrency();
+        this.deferredUpload = descriptor.isDeferredUpload();
+        this.policyCacheTtl = descriptor.getPolicyCacheTtl() == null ? "0" : descriptor.getPolicyCacheTtl();
+        this.coalesceWindow = descriptor.getCoalesceWindow() == null ? "0" : descriptor.getCoalesceWindow();
+        this.coalesceLastWriterWins = descriptor.isCoalesceLastWriterWins();
+        this.agentSideUpload = descriptor.isAgentSideUpload();
+        this.optimisticUpdate = descriptor.isOptimisticUpdate();
+        this.earlyRejection = descriptor.isEarlyRejection();
+        this.policySnapshotRefresh = descriptor.getPolicySnapshotRefresh() == null ? "0" : descriptor.getPolicySnapshotRefresh();
+        this.stepTimeout = descriptor.getStepTimeout() == null ? "0" : descriptor.getStepTimeout();
+        this.scanTimeout = descriptor.getScanTimeout() == null ? "0" : descriptor.getScanTimeout();
+        this.policyCheckTimeout = descriptor.getPolicyCheckTimeout() == null ? "0" : descriptor.getPolicyCheckTimeout();
+        this.updateTimeout = descriptor.getUpdateTimeout() == null ? "0" : descriptor.getUpdateTimeout();
     }
 
     public WhiteSourceDescriptor(WhiteSourcePipelineStep.DescriptorImpl descriptor) {
@@ -61,7 +91,22 @@ public class WhiteSourceDescriptor {
         this.password = descriptor.getPassword();
         this.connectionTimeout = descriptor.getConnectionTimeout();
         this.connectionRetries = descriptor.getConnectionRetries() ==  null ? "1" : descriptor.getConnectionRetries();
-        this.connectionRetriesInterval = descriptor.getConnectionRetriesInterval() ==  null ? "30" : descriptor.getConnectionRetries();
+        this.connectionRetriesInterval = descriptor.getConnectionRetriesInterval() ==  null ? "30" : descriptor.getConnectionRetriesInterval();
+        this.updateBatchSize = descriptor.getUpdateBatchSize() == null ? "0" : descriptor.getUpdateBatchSize();
+        this.updateBatchMaxSize = descriptor.getUpdateBatchMaxSize() == null ? "0" : descriptor.getUpdateBatchMaxSize();
+        this.updateConcurrency = descriptor.getUpdateConcurrency() == null ? "1" : descriptor.getUpdateConcurrency();
+        this.deferredUpload = descriptor.isDeferredUpload();
+        this.policyCacheTtl = descriptor.getPolicyCacheTtl() == null ? "0" : descriptor.getPolicyCacheTtl();
+        this.coalesceWindow = descriptor.getCoalesceWindow() == null ? "0" : descriptor.getCoalesceWindow();
+        this.coalesceLastWriterWins = descriptor.isCoalesceLastWriterWins();
+        this.agentSideUpload = descriptor.isAgentSideUpload();
+        this.optimisticUpdate = descriptor.isOptimisticUpdate();
+        this.earlyRejection = descriptor.isEarlyRejection();
+        this.policySnapshotRefresh = descriptor.getPolicySnapshotRefresh() == null ? "0" : descriptor.getPolicySnapshotRefresh();
+        this.stepTimeout = descriptor.getStepTimeout() == null ? "0" : descriptor.getStepTimeout();
+        this.scanTimeout = descriptor.getScanTimeout() == null ? "0" : descriptor.getScanTimeout();
+        this.policyCheckTimeout = descriptor.getPolicyCheckTimeout() == null ? "0" : descriptor.getPolicyCheckTimeout();
+        this.updateTimeout = descriptor.getUpdateTimeout() == null ? "0" : descriptor.getUpdateTimeout();
     }
 
     /* --- Getters / Setters --- */
@@ -172,4 +217,124 @@ public class WhiteSourceDescriptor {
         this.connectionRetriesInterval = connectionRetriesInterval;
     }
 
+    public String getUpdateBatchSize() {
+        return updateBatchSize;
+    }
+
+    public void setUpdateBatchSize(String updateBatchSize) {
+        this.updateBatchSize = updateBatchSize;
+    }
+
+    public String getUpdateBatchMaxSize() {
+        return updateBatchMaxSize;
+    }
+
+    public void setUpdateBatchMaxSize(String updateBatchMaxSize) {
+        this.updateBatchMaxSize = updateBatchMaxSize;
+    }
+
+    public String getUpdateConcurrency() {
+        return updateConcurrency;
+    }
+
+    public void setUpdateConcurrency(String updateConcurrency) {
+        this.updateConcurrency = updateConcurrency;
+    }
+
+    public boolean isDeferredUpload() {
+        return deferredUpload;
+    }
+
+    public void setDeferredUpload(boolean deferredUpload) {
+        this.deferredUpload = deferredUpload;
+    }
+
+    public String getPolicyCacheTtl() {
+        return policyCacheTtl;
+    }
+
+    public void setPolicyCacheTtl(String policyCacheTtl) {
+        this.policyCacheTtl = policyCacheTtl;
+    }
+
+    public String getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(String coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public boolean isCoalesceLastWriterWins() {
+        return coalesceLastWriterWins;
+    }
+
+    public void setCoalesceLastWriterWins(boolean coalesceLastWriterWins) {
+        this.coalesceLastWriterWins = coalesceLastWriterWins;
+    }
+
+    public boolean isAgentSideUpload() {
+        return agentSideUpload;
+    }
+
+    public void setAgentSideUpload(boolean agentSideUpload) {
+        this.agentSideUpload = agentSideUpload;
+    }
+
+    public boolean isOptimisticUpdate() {
+        return optimisticUpdate;
+    }
+
+    public void setOptimisticUpdate(boolean optimisticUpdate) {
+        this.optimisticUpdate = optimisticUpdate;
+    }
+
+    public boolean isEarlyRejection() {
+        return earlyRejection;
+    }
+
+    public void setEarlyRejection(boolean earlyRejection) {
+        this.earlyRejection = earlyRejection;
+    }
+
+    public String getPolicySnapshotRefresh() {
+        return policySnapshotRefresh;
+    }
+
+    public void setPolicySnapshotRefresh(String policySnapshotRefresh) {
+        this.policySnapshotRefresh = policySnapshotRefresh;
+    }
+
+    public String getStepTimeout() {
+        return stepTimeout;
+    }
+
+    public void setStepTimeout(String stepTimeout) {
+        this.stepTimeout = stepTimeout;
+    }
+
+    public String getScanTimeout() {
+        return scanTimeout;
+    }
+
+    public void setScanTimeout(String scanTimeout) {
+        this.scanTimeout = scanTimeout;
+    }
+
+    public String getPolicyCheckTimeout() {
+        return policyCheckTimeout;
+    }
+
+    public void setPolicyCheckTimeout(String policyCheckTimeout) {
+        this.policyCheckTimeout = policyCheckTimeout;
+    }
+
+    public String getUpdateTimeout() {
+        return updateTimeout;
+    }
+
+    public void setUpdateTimeout(String updateTimeout) {
+        this.updateTimeout = updateTimeout;
+    }
+
 }
@@ -1,5 +1,6 @@
 package org.whitesource.jenkins.model;
 
+import hudson.AbortException;
 import hudson.FilePath;
 import hudson.ProxyConfiguration;
 import hudson.Util;
@@ -22,17 +23,32 @@ import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
 import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
 import org.whitesource.agent.client.WhitesourceService;
 import org.whitesource.agent.client.WssServiceException;
-import org.whitesource.agent.report.PolicyCheckReport;
 import org.whitesource.fs.FSAConfigProperties;
 import org.whitesource.fs.FSAConfiguration;
 import org.whitesource.jenkins.Constants;
 import org.whitesource.jenkins.PolicyCheckReportAction;
 import org.whitesource.jenkins.WhiteSourcePublisher;
+import org.whitesource.jenkins.extractor.generic.DependencySink;
 import org.whitesource.jenkins.extractor.generic.GenericOssInfoExtractor;
+import org.whitesource.jenkins.extractor.generic.LibFolderUploader;
+import org.whitesource.jenkins.extractor.maven.MavenModuleFingerprints;
 import org.whitesource.jenkins.extractor.maven.MavenOssInfoExtractor;
+import org.whitesource.jenkins.extractor.maven.MavenPipelineOssInfoExtractor;
 import org.whitesource.jenkins.pipeline.WhiteSourcePipelineStep;
+import org.whitesource.jenkins.service.CircuitBreaker;
+import org.whitesource.jenkins.service.Deadline;
+import org.whitesource.jenkins.service.DeferredUploadQueue;
+import org.whitesource.jenkins.service.PolicyCheckCache;
+import org.whitesource.jenkins.service.PolicyReportStore;
+import org.whitesource.jenkins.service.PolicySnapshot;
+import org.whitesource.jenkins.service.RequestRetry;
+import org.whitesource.jenkins.service.RequestStats;
+import org.whitesource.jenkins.service.TrendIndex;
+import org.whitesource.jenkins.service.UpdateCoalescer;
+import org.whitesource.jenkins.service.WhitesourceServicePool;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,6 +56,15 @@ import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Holds job related configuration
@@ -51,13 +76,25 @@ public class WhiteSourceStep {
     /* --- Static members --- */
 
     public static final String SPACE = " ";
-    private static final String PLUGIN_AGENTS_VERSION = "2.9.5";
-    private static final String PLUGIN_VERSION = "21.1.2";
     public static final String WITH_MAVEN = "withMaven";
     public static final String GENERIC_GLOB_PATTERN = "**/*.";
     public static final String COMMA = ",";
     public static final String SLASH = "/";
     public static final String AGENT_KEYWORD = "agent";
+
+    /**
+     * Rough size of a serialized dependency, used to split update requests by payload size.
+     */
+    private static final long ESTIMATED_DEPENDENCY_BYTES = 400;
+    private static final long ESTIMATED_PROJECT_BYTES = 200;
+
+    /**
+     * Number of dependencies per policy check while scanning.
+     */
+    private static final int EARLY_CHECK_BATCH_SIZE = 1000;
+
+    private static ExecutorService updateExecutor;
+
     /* --- Members --- */
     private WhiteSourceDescriptor globalConfig;
 
@@ -68,13 +105,29 @@ public class WhiteSourceStep {
     private Secret projectToken;
     private String libIncludes;
     private String libExcludes;
+    private String mavenDependencyLists;
     private Secret mavenProjectToken;
     private String requesterEmail;
     private Secret moduleTokens;
     private String modulesToInclude;
     private String modulesToExclude;
     private boolean ignorePomModules;
+    private boolean skipUnchangedModules;
+    private boolean pipeline;
     private String productNameOrToken;
+    private Map<String, String> moduleFingerprints;
+    private WhitesourceServicePool.Key serviceKey;
+    private EarlyPolicyCheck earlyPolicyCheck;
+    private Deadline stepDeadline;
+
+    /**
+     * Measures of the build for the trend of its job, -1 if not known.
+     */
+    private long scanStartedAt;
+    private long scanMillis = -1;
+    private volatile long uploadMillis = -1;
+    private volatile int rejections = -1;
+    private int agentDependencies = -1;
 
     private boolean shouldCheckPolicies;
     private boolean checkAllLibraries;
@@ -85,6 +138,7 @@ public class WhiteSourceStep {
     public WhiteSourceStep(WhiteSourceDescriptor globalConfig, Secret jobApiToken,
                            String jobForceUpdate, String jobCheckPolicies, Secret jobUserKey) {
         this.globalConfig = globalConfig;
+        this.stepDeadline = Deadline.in(parseInt(globalConfig.getStepTimeout(), 0), TimeUnit.MINUTES);
         setApiToken(jobApiToken);
         setUserKey(jobUserKey);
         isForceUpdate(jobForceUpdate);
@@ -105,6 +159,7 @@ public class WhiteSourceStep {
         this.modulesToInclude = publisher.getModulesToInclude();
         this.modulesToExclude = publisher.getModulesToExclude();
         this.ignorePomModules = publisher.isIgnorePomModules();
+        this.skipUnchangedModules = publisher.isSkipUnchangedModules();
     }
 
     public WhiteSourceStep(WhiteSourcePipelineStep step, WhiteSourceDescriptor globalConfig) {
@@ -115,6 +170,8 @@ public class WhiteSourceStep {
         this.libIncludes = step.getLibIncludes();
         this.libExcludes = step.getLibExcludes();
         this.requesterEmail = step.getRequesterEmail();
+        this.mavenDependencyLists = step.getMavenDependencyLists();
+        this.pipeline = true;
     }
 
     /* --- Public methods --- */
@@ -123,18 +180,23 @@ public class WhiteSourceStep {
         PrintStream logger = listener.getLogger();
 
         WhitesourceService service = createServiceClient(logger);
+        Future<Void> upload = null;
         try {
             if (shouldCheckPolicies) {
+                if (isOptimisticUpdate()) {
+                    logger.println("Force update is on, sending the update alongside the policy check");
+                    upload = sendOrDeferAsync(run, projectInfos, logger);
+                }
                 logger.println("Checking policies");
                 CheckPolicyComplianceRequest policyRequest = new CheckPolicyComplianceRequest(Secret.toString(jobApiToken), projectInfos ,checkAllLibraries);
                 policyRequest.setProduct(productNameOrToken);
                 policyRequest.setProductVersion(productVersion);
                 policyRequest.setUserKey(Secret.toString(jobUserKey));
-                CheckPolicyComplianceResult result= service.checkPolicyCompliance(policyRequest);
-                policyCheckReport(result, run, listener);
+                CheckPolicyComplianceResult result = checkPolicyCompliance(policyRequest, service, logger);
                 boolean hasRejections = result.hasRejections();
                 String message;
                 if (hasRejections && !isForceUpdate) {
+                    policyCheckReport(result, run, listener);
                     message = "Open source rejected by organization policies.";
                     if (globalConfig.isFailOnError()) {
                         stopBuild(run, listener, message);
@@ -146,28 +208,70 @@ public class WhiteSourceStep {
                             " were force updated to organization inventory." :
                             "All dependencies conform with open source policies.";
                     logger.println(message);
-                    sendUpdate(jobApiToken, requesterEmail, productNameOrToken, projectInfos, service, logger, productVersion, jobUserKey);
+                    // the update doesn't depend on the report, save it meanwhile
+                    Future<Void> report = policyCheckReportAsync(result, run, listener);
+                    boolean updated = false;
+                    try {
+                        if (upload != null) {
+                            Future<Void> pending = upload;
+                            upload = null;
+                            await(pending);
+                        } else {
+                            sendOrDefer(run, projectInfos, service, logger);
+                        }
+                        updated = true;
+                    } finally {
+                        if (!updated) {
+                            awaitQuietly(report, logger);
+                        }
+                    }
+                    await(report);
                     if (globalConfig.isFailOnError() && hasRejections) {
                         stopBuild(run, listener, "White Source Publisher failure");
                     }
                 }
             } else {
-                sendUpdate(jobApiToken, requesterEmail, productNameOrToken, projectInfos, service, logger, productVersion, jobUserKey);
+                sendOrDefer(run, projectInfos, service, logger);
             }
         } catch (WssServiceException | IOException | RuntimeException e) {
             stopBuildOnError(run, globalConfig.isFailOnError(), listener, e);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            // stopped, the caller decides how the step completes
+            Thread.currentThread().interrupt();
         } finally {
-            service.shutdown();
+            // an update sent alongside a failed policy check still completes before the build moves on
+            awaitQuietly(upload, logger);
+            WhitesourceServicePool.get().release(service);
         }
     }
 
+    /**
+     * Sends an update request queued by an earlier build.
+     */
+    public List<UpdateInventoryResult> sendDeferred(String productNameOrToken, String productVersion, String requesterEmail,
+                                                    Collection<AgentProjectInfo> projectInfos, TaskListener listener) throws WssServiceException {
+        PrintStream logger = listener.getLogger();
+        WhitesourceService service = createServiceClient(logger);
+        try {
+            return sendUpdate(jobApiToken, requesterEmail, productNameOrToken, projectInfos, service, logger, productVersion, jobUserKey);
+        } finally {
+            WhitesourceServicePool.get().release(service);
+        }
+    }
+
+    /**
+     * @return False while the circuit breaker of the service url is open.
+     */
+    public boolean isServiceAvailable() {
+        return CircuitBreaker.forUrl(getAgentServiceUrl()).getRetryAfter() == 0;
+    }
+
     public Collection<AgentProjectInfo> getProjectInfos(Run<?, ?> run, TaskListener listener, FilePath workspace, boolean isFreeStyleStep) throws IOException, InterruptedException {
         PrintStream logger = listener.getLogger();
 
         // collect OSS usage information
         logger.println("Collecting OSS usage information");
+        scanStartedAt = System.nanoTime();
         Collection<AgentProjectInfo> projectInfos = new LinkedList<>();
 
         productNameOrToken = product;
@@ -176,19 +280,14 @@ public class WhiteSourceStep {
             projectInfos = getMavenProjectInfos((MavenModuleSetBuild) run, listener, workspace, logger);
         } else if (run instanceof FreeStyleBuild || isFreeStyleStep) {
             if (run instanceof WorkflowRun) {
-                FlowExecution exec = ((WorkflowRun) run).getExecution();
-                String script = "";
-                if (exec != null) {
-                    script = ((CpsFlowExecution) exec).getScript();
-                }
-                //WSE-886 remove comments, withMaven can be commented out and still show in pipeline script
-                String withMavenChecker=script.replaceAll("(?sm)(^(?:\\s*)?((?:/\\*(?:\\*)?).*?(?<=\\*/))|(?://).*?(?<=$))", "");
-
-                if (StringUtils.isNotBlank(script) && withMavenChecker.contains(WITH_MAVEN)) {
-                    // maven pipeline job
-                    // todo: check JEP-200 compatibility
-
-                    projectInfos = getFSAProjects(logger, workspace);
+                if (isWithMaven(run)) {
+                    // maven pipeline job - read the dependency lists written by the build
+                    projectInfos = getMavenPipelineProjectInfos(run, listener, workspace, logger);
+                    if (projectInfos.isEmpty()) {
+                        // todo: check JEP-200 compatibility
+                        logger.println("No maven build output found, falling back to scanning the whole workspace");
+                        projectInfos = getFSAProjects(logger, workspace);
+                    }
                 } else {
                     // pipeline job - support Remote dependency JEP-200
                     projectInfos = getGenericProjectInfos(run, listener, workspace, logger);
@@ -198,28 +297,164 @@ public class WhiteSourceStep {
                 projectInfos = getGenericProjectInfos(run, listener, workspace, logger);
             }
         }
+        scanFinished();
         logger.println("Job finished.");
         return projectInfos;
     }
 
+    /**
+     * Starts collecting the OSS usage information of a pipeline run without waiting for the agent to scan the workspace.
+     */
+    public PendingScan<?> getProjectInfosAsync(final Run<?, ?> run, final TaskListener listener, final FilePath workspace) throws IOException, InterruptedException {
+        final PrintStream logger = listener.getLogger();
+        logger.println("Collecting OSS usage information");
+        scanStartedAt = System.nanoTime();
+        productNameOrToken = product;
+
+        if (isWithMaven(run)) {
+            logger.println("Starting Pipeline-Maven job on " + workspace.getRemote());
+            final MavenPipelineOssInfoExtractor extractor = new MavenPipelineOssInfoExtractor(mavenDependencyLists, run, listener,
+                    projectToken, productVersion, workspace);
+            return new PendingScan<Map<String, Collection<RemoteDependency>>>(extractor.extractAsync(), null,
+                    phaseDeadline(globalConfig.getScanTimeout())) {
+                @Override
+                protected Collection<AgentProjectInfo> toProjectInfos(Map<String, Collection<RemoteDependency>> result) {
+                    Collection<AgentProjectInfo> projectInfos = extractor.toProjectInfos(result);
+                    if (projectInfos.isEmpty()) {
+                        logger.println("No maven build output found, falling back to scanning the whole workspace");
+                        projectInfos = getFSAProjects(logger, workspace);
+                    }
+                    logger.println("Job finished.");
+                    return projectInfos;
+                }
+            };
+        }
+
+        logger.println("Starting generic job on " + workspace.getRemote());
+        final GenericOssInfoExtractor extractor = new GenericOssInfoExtractor(libIncludes, libExcludes, run, listener, projectToken, workspace);
+        EarlyPolicyCheck check = startEarlyPolicyCheck(run, listener, extractor);
+        return new PendingScan<Collection<RemoteDependency>>(extractor.extractAsync(), check, phaseDeadline(globalConfig.getScanTimeout())) {
+            @Override
+            protected Collection<AgentProjectInfo> toProjectInfos(Collection<RemoteDependency> result) {
+                Collection<AgentProjectInfo> projectInfos = extractor.toProjectInfos(result);
+                logger.println("Job finished.");
+                return projectInfos;
+            }
+        };
+    }
+
+    /**
+     * @return True if the agent scanning the workspace of the run is to send the update request itself.
+     */
+    public boolean isAgentUpload(Run<?, ?> run) {
+        // policy checks, deferred and merged updates need the dependencies on the controller
+        return globalConfig.isAgentSideUpload() && !shouldCheckPolicies && !globalConfig.isDeferredUpload() &&
+                parseInt(globalConfig.getCoalesceWindow(), 0) == 0 &&
+                (run instanceof FreeStyleBuild || (run instanceof WorkflowRun && !isWithMaven(run)));
+    }
+
+    /**
+     * Starts scanning the workspace and sending the update request from its agent, see {@link #isAgentUpload(Run)}.
+     *
+     * @return The pending upload, its projects are always empty as the agent sent them.
+     */
+    public PendingScan<?> uploadFromAgent(final Run<?, ?> run, final TaskListener listener, FilePath workspace) throws IOException, InterruptedException {
+        final PrintStream logger = listener.getLogger();
+        logger.println("Collecting OSS usage information");
+        scanStartedAt = System.nanoTime();
+        productNameOrToken = product;
+        logger.println("Starting generic job on " + workspace.getRemote() + ", the agent sends the update request");
+
+        GenericOssInfoExtractor extractor = new GenericOssInfoExtractor(libIncludes, libExcludes, run, listener, projectToken, workspace);
+        logger.println("WhiteSource Service URL:" + globalConfig.getServiceUrl());
+        Future<LibFolderUploader.Summary> upload = extractor.uploadAsync(createServiceKey(), jobApiToken, jobUserKey,
+                productNameOrToken, productVersion, requesterEmail, parseInt(globalConfig.getConnectionRetries(), 1),
+                parseInt(globalConfig.getConnectionRetriesInterval(), 30));
+        // scanning and sending on the agent, only the step timeout applies
+        return new PendingScan<LibFolderUploader.Summary>(upload, null, stepDeadline) {
+            @Override
+            protected Collection<AgentProjectInfo> toProjectInfos(LibFolderUploader.Summary result) {
+                logAgentUpload(run, listener, result);
+                logger.println("Job finished.");
+                return Collections.emptyList();
+            }
+        };
+    }
+
     private Collection<AgentProjectInfo> getMavenProjectInfos(MavenModuleSetBuild run, TaskListener listener, FilePath workspace, PrintStream logger) throws InterruptedException, IOException {
         Collection<AgentProjectInfo> projectInfos;
         logger.println("Starting Maven job on " + workspace.getRemote());
         MavenOssInfoExtractor extractor = new MavenOssInfoExtractor(modulesToInclude,
-                modulesToExclude, run, listener, mavenProjectToken, moduleTokens, ignorePomModules);
+                modulesToExclude, run, listener, mavenProjectToken, moduleTokens, ignorePomModules, skipUnchangedModules);
         projectInfos = extractor.extract();
+        moduleFingerprints = extractor.getFingerprints();
         if (StringUtils.isBlank(product)) {
             productNameOrToken = extractor.getTopMostProjectName();
         }
+        if (projectInfos.isEmpty() && !moduleFingerprints.isEmpty()) {
+            // all modules are unchanged, nothing to send but keep the baseline for the next build
+            recordModuleFingerprints(run);
+        }
         return projectInfos;
     }
 
+    private Collection<AgentProjectInfo> getMavenPipelineProjectInfos(Run<?, ?> run, TaskListener listener, FilePath workspace, PrintStream logger) throws InterruptedException, IOException {
+        logger.println("Starting Pipeline-Maven job on " + workspace.getRemote());
+        final MavenPipelineOssInfoExtractor extractor = new MavenPipelineOssInfoExtractor(mavenDependencyLists, run, listener,
+                projectToken, productVersion, workspace);
+        return new PendingScan<Map<String, Collection<RemoteDependency>>>(extractor.extractAsync(), null,
+                phaseDeadline(globalConfig.getScanTimeout())) {
+            @Override
+            protected Collection<AgentProjectInfo> toProjectInfos(Map<String, Collection<RemoteDependency>> result) {
+                return extractor.toProjectInfos(result);
+            }
+        }.getProjectInfos();
+    }
+
     private Collection<AgentProjectInfo> getGenericProjectInfos(Run<?, ?> run, TaskListener listener, FilePath workspace, PrintStream logger) throws InterruptedException, IOException {
-        Collection<AgentProjectInfo> projectInfos;
         logger.println("Starting generic job on " + workspace.getRemote());
-        GenericOssInfoExtractor extractor = new GenericOssInfoExtractor(libIncludes, libExcludes, run, listener, projectToken, workspace);
-        projectInfos = extractor.extract();
-        return projectInfos;
+        final GenericOssInfoExtractor extractor = new GenericOssInfoExtractor(libIncludes, libExcludes, run, listener, projectToken, workspace);
+        EarlyPolicyCheck check = startEarlyPolicyCheck(run, listener, extractor);
+        return new PendingScan<Collection<RemoteDependency>>(extractor.extractAsync(), check, phaseDeadline(globalConfig.getScanTimeout())) {
+            @Override
+            protected Collection<AgentProjectInfo> toProjectInfos(Collection<RemoteDependency> result) {
+                return extractor.toProjectInfos(result);
+            }
+        }.getProjectInfos();
+    }
+
+    /**
+     * Adds the build to the trend of its job, once the step is done.
+     *
+     * @param projectInfos Projects found by the scan.
+     */
+    public void recordTrend(Run<?, ?> run, TaskListener listener, Collection<AgentProjectInfo> projectInfos) {
+        int dependencies;
+        if (agentDependencies >= 0) {
+            dependencies = agentDependencies;
+        } else if (isRejectedByPolicies()) {
+            // the scan was stopped
+            dependencies = -1;
+        } else {
+            long count = 0;
+            for (AgentProjectInfo projectInfo : projectInfos) {
+                count += countDependencies(projectInfo.getDependencies());
+            }
+            dependencies = (int) Math.min(count, Integer.MAX_VALUE);
+        }
+        try {
+            TrendIndex.append(run, new TrendIndex.Record(run.getNumber(), run.getTimeInMillis(), dependencies, rejections,
+                    scanMillis, uploadMillis));
+        } catch (IOException e) {
+            listener.getLogger().println("Failed to record the White Source trend: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return True if the libraries were rejected by policies while scanning, the rejection is already reported.
+     */
+    public boolean isRejectedByPolicies() {
+        return earlyPolicyCheck != null && earlyPolicyCheck.isRejected();
     }
 
     public void stopBuild(Run<?, ?> run, TaskListener listener, String message) {
@@ -229,9 +464,39 @@ public class WhiteSourceStep {
 
     /* --- Private methods --- */
 
-    private WhitesourceService createServiceClient(PrintStream logger) {
+    /**
+     * Checks the policies of the dependencies found while the workspace is being scanned, if enabled.
+     *
+     * @return The check, null if not enabled.
+     */
+    private EarlyPolicyCheck startEarlyPolicyCheck(Run<?, ?> run, TaskListener listener, GenericOssInfoExtractor extractor) {
+        // with force update a rejection doesn't stop the update
+        if (!globalConfig.isEarlyRejection() || !shouldCheckPolicies || isForceUpdate) {
+            return null;
+        }
+        serviceKey = createServiceKey();
+        earlyPolicyCheck = new EarlyPolicyCheck(run, listener, extractor);
+        extractor.setDependencySink(earlyPolicyCheck, EARLY_CHECK_BATCH_SIZE);
+        listener.getLogger().println("Checking policies while scanning, every " + EARLY_CHECK_BATCH_SIZE + " dependencies");
+        return earlyPolicyCheck;
+    }
+
+    private boolean isWithMaven(Run<?, ?> run) {
+        if (!(run instanceof WorkflowRun)) {
+            return false;
+        }
+        FlowExecution exec = ((WorkflowRun) run).getExecution();
+        String script = "";
+        if (exec != null) {
+            script = ((CpsFlowExecution) exec).getScript();
+        }
+        //WSE-886 remove comments, withMaven can be commented out and still show in pipeline script
+        String withMavenChecker=script.replaceAll("(?sm)(^(?:\\s*)?((?:/\\*(?:\\*)?).*?(?<=\\*/))|(?://).*?(?<=$))", "");
+        return StringUtils.isNotBlank(script) && withMavenChecker.contains(WITH_MAVEN);
+    }
+
+    private String getAgentServiceUrl() {
         String url = globalConfig.getServiceUrl();
-        logger.println("WhiteSource Service URL:" + url);
         if (StringUtils.isNotBlank(url)) {
 
             if (!url.endsWith(AGENT_KEYWORD)) {
@@ -241,15 +506,24 @@ public class WhiteSourceStep {
                 url += AGENT_KEYWORD;
             }
         }
+        return url;
+    }
+
+    private WhitesourceService createServiceClient(PrintStream logger) {
+        logger.println("WhiteSource Service URL:" + globalConfig.getServiceUrl());
+        // pooled clients keep their connections alive between builds
+        return WhitesourceServicePool.get().acquire(createServiceKey());
+    }
+
+    private WhitesourceServicePool.Key createServiceKey() {
+        String url = getAgentServiceUrl();
         int connectionTimeout = Constants.DEFAULT_TIMEOUT;
         if (NumberUtils.isNumber(globalConfig.getConnectionTimeout())) {
             int connectionTimeoutInteger = Integer.parseInt(globalConfig.getConnectionTimeout());
             connectionTimeout = connectionTimeoutInteger > 0 ? connectionTimeoutInteger : connectionTimeout;
         }
         boolean proxyConfigured = isProxyConfigured(globalConfig);
-        WhitesourceService service = new WhitesourceService(Constants.AGENT_TYPE, PLUGIN_AGENTS_VERSION,
-                PLUGIN_VERSION, url, proxyConfigured, connectionTimeout);
-
+        WhitesourceServicePool.Key key;
 
         if (proxyConfigured) {
             String host, userName, password;
@@ -277,59 +551,298 @@ public class WhiteSourceStep {
             } catch (MalformedURLException e) {
                 // nothing to do here
             }
-            service.getClient().setProxy(host, port, userName, password);
+            key = new WhitesourceServicePool.Key(url, connectionTimeout, true, host, port, userName, password);
+        } else {
+            key = new WhitesourceServicePool.Key(url, connectionTimeout);
         }
 
-        return service;
+        serviceKey = key;
+        return key;
     }
 
-    private void sendUpdate(Secret orgToken,
-                            String requesterEmail,
-                            String productNameOrToken,
-                            Collection<AgentProjectInfo> projectInfos,
-                            WhitesourceService service,
-                            PrintStream logger, String productVersion, Secret userKey) throws WssServiceException {
-        logger.println("Sending to White Source");
+    /**
+     * Queues the update when deferred uploads are enabled, sends it otherwise.
+     */
+    private void sendOrDefer(Run<?, ?> run, Collection<AgentProjectInfo> projectInfos, WhitesourceService service,
+                             PrintStream logger) throws WssServiceException, IOException {
+        long startedAt = System.nanoTime();
+        if (globalConfig.isDeferredUpload()) {
+            DeferredUploadQueue.get().enqueue(run, new DeferredUploadQueue.Entry(run, pipeline, jobApiToken, jobUserKey,
+                    productNameOrToken, productVersion, requesterEmail, projectInfos));
+            // module fingerprints are not recorded, unchanged modules are sent again until an update lands
+            logger.println("Update request queued, it is sent to White Source in the background");
+            uploadMillis = elapsedMillis(startedAt);
+            return;
+        }
+        long window = TimeUnit.SECONDS.toMillis(parseInt(globalConfig.getCoalesceWindow(), 0));
+        if (window > 0) {
+            sendCoalesced(projectInfos, window, service, logger);
+        } else {
+            sendUpdate(jobApiToken, requesterEmail, productNameOrToken, projectInfos, service, logger, productVersion, jobUserKey);
+        }
+        uploadMillis = elapsedMillis(startedAt);
+        recordModuleFingerprints(run);
+    }
 
-        int retries =  Integer.parseInt(globalConfig.getConnectionRetries());
-        int interval = Integer.parseInt(globalConfig.getConnectionRetriesInterval());
+    /**
+     * Sends or queues the update on another thread, with a client of its own.
+     */
+    private Future<Void> sendOrDeferAsync(final Run<?, ?> run, final Collection<AgentProjectInfo> projectInfos, final PrintStream logger) {
+        return getUpdateExecutor().submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                WhitesourceService service = WhitesourceServicePool.get().acquire(serviceKey);
+                try {
+                    sendOrDefer(run, projectInfos, service, logger);
+                    return null;
+                } finally {
+                    WhitesourceServicePool.get().release(service);
+                }
+            }
+        });
+    }
 
+    /**
+     * @return True if the update is sent whatever the policy check result and can't change what is checked.
+     */
+    private boolean isOptimisticUpdate() {
+        // an update landing first would hide new libraries from a check of new libraries only
+        return globalConfig.isOptimisticUpdate() && isForceUpdate && checkAllLibraries;
+    }
 
-        UpdateInventoryResult updateResult = null;
-        while (retries-- > -1) {
-            try {
-                UpdateInventoryRequest updateRequest = new UpdateInventoryRequest(Secret.toString(orgToken),
-                        productNameOrToken, productVersion, projectInfos, Secret.toString(userKey), null);
-                updateRequest.setRequesterEmail(requesterEmail);
-                updateResult = service.update(updateRequest);
-                if(updateResult != null) {
-                    break;
-                }
-            } catch (WssServiceException e) {
-                logger.println("Failed to send request to WhiteSource server: " + e.getMessage());
-                if (e.getCause() != null &&
-                        e.getCause().getClass().getCanonicalName().substring(0, e.getCause().getClass().getCanonicalName().lastIndexOf(Constants.DOT)).equals(Constants.JAVA_NETWORKING)) {
-                    //statusCode = StatusCode.CONNECTION_FAILURE;
-                    logger.println("Trying " + (retries + 1) + " more time" + (retries != 0 ? "s" : Constants.EMPTY_STRING));
-                } else {
-                    //statusCode = StatusCode.SERVER_FAILURE;
-                    retries = -1;
-                }
+    /**
+     * Waits for a task started by {@link #sendOrDeferAsync} or {@link #policyCheckReportAsync}, rethrowing its failure.
+     */
+    private static void await(Future<Void> task) throws WssServiceException, IOException, InterruptedException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof WssServiceException) {
+                throw (WssServiceException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
-                if (retries > -1) {
+    private static void awaitQuietly(Future<Void> task, PrintStream logger) {
+        if (task == null) {
+            return;
+        }
+        try {
+            await(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (WssServiceException | IOException | RuntimeException e) {
+            logger.println("White Source Publisher failure " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the update merged with the updates of other builds to the same target within the window.
+     */
+    private void sendCoalesced(Collection<AgentProjectInfo> projectInfos, long window, final WhitesourceService service,
+                               final PrintStream logger) throws WssServiceException, IOException {
+        String key = UpdateCoalescer.key(Secret.toString(jobApiToken), Secret.toString(jobUserKey), productNameOrToken,
+                productVersion, projectInfos);
+        logger.println("Waiting " + TimeUnit.MILLISECONDS.toSeconds(window) + " seconds for updates of other builds to merge with");
+        final boolean[] sentByThisBuild = new boolean[1];
+        try {
+            List<UpdateInventoryResult> results = UpdateCoalescer.get().submit(key, projectInfos, window,
+                    globalConfig.isCoalesceLastWriterWins(), phaseDeadline(globalConfig.getUpdateTimeout()), new UpdateCoalescer.Sender() {
+                        public List<UpdateInventoryResult> send(Collection<AgentProjectInfo> merged, int mergedRequests) throws WssServiceException {
+                            sentByThisBuild[0] = true;
+                            if (mergedRequests > 1) {
+                                logger.println("Merged the update requests of " + mergedRequests + " builds");
+                            }
+                            return sendUpdate(jobApiToken, requesterEmail, productNameOrToken, merged, service, logger, productVersion, jobUserKey);
+                        }
+                    });
+            if (!sentByThisBuild[0] && !results.isEmpty()) {
+                logger.println("Update sent along with the request of another build");
+                logUpdateResults(results, logger);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the merged update request", e);
+        }
+    }
+
+    /**
+     * @return The results of all update requests, throws if any of them was not sent.
+     */
+    private List<UpdateInventoryResult> sendUpdate(Secret orgToken,
+                                                   String requesterEmail,
+                                                   String productNameOrToken,
+                                                   Collection<AgentProjectInfo> projectInfos,
+                                                   WhitesourceService service,
+                                                   PrintStream logger, String productVersion, Secret userKey) throws WssServiceException {
+        logger.println("Sending to White Source");
+
+        final List<List<AgentProjectInfo>> batches = splitBatches(projectInfos);
+        final UpdateInventoryResult[] results = new UpdateInventoryResult[batches.size()];
+        final UpdateTask task = new UpdateTask(orgToken, requesterEmail, productNameOrToken, productVersion, userKey, batches, results,
+                phaseDeadline(globalConfig.getUpdateTimeout()), logger);
+        int concurrency = Math.min(parseInt(globalConfig.getUpdateConcurrency(), 1), batches.size());
+        if (batches.size() > 1) {
+            logger.println("Splitting " + projectInfos.size() + " projects into " + batches.size() +
+                    " update requests, sending up to " + concurrency + " at a time");
+        }
+
+        // extra workers lease their own clients, the calling thread keeps the build's one
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 1; i < concurrency; i++) {
+            workers.add(getUpdateExecutor().submit(new Runnable() {
+                public void run() {
+                    WhitesourceService workerService = WhitesourceServicePool.get().acquire(serviceKey);
                     try {
-                        Thread.sleep(interval*1000);
-                    } catch (InterruptedException e1) {
-                        logger.println("Failed to sleep while retrying to connect to server " + e1.getMessage());
+                        task.run(workerService);
+                    } finally {
+                        WhitesourceServicePool.get().release(workerService);
                     }
                 }
+            }));
+        }
+        task.run(service);
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                task.cancel();
+                Thread.currentThread().interrupt();
+                throw new WssServiceException("Interrupted while sending update requests");
+            } catch (ExecutionException e) {
+                logger.println("Failed to send update requests: " + e.getCause());
             }
         }
-        if (updateResult != null) {
-            logUpdateResult(updateResult, logger);
-        } else {
-            throw new WssServiceException("Connection Failed");
+
+        List<UpdateInventoryResult> sent = new ArrayList<>();
+        for (UpdateInventoryResult result : results) {
+            if (result != null) {
+                sent.add(result);
+            }
+        }
+        if (!sent.isEmpty()) {
+            logUpdateResults(sent, logger);
         }
+        if (sent.size() < results.length) {
+            throw new WssServiceException(results.length == 1 ? "Connection Failed" :
+                    "Connection Failed, " + (results.length - sent.size()) + " of " + results.length + " update requests were not sent");
+        }
+        return sent;
+    }
+
+    /**
+     * Splits the projects by the configured project count and estimated payload size, keeping their order.
+     */
+    private List<List<AgentProjectInfo>> splitBatches(Collection<AgentProjectInfo> projectInfos) {
+        int maxProjects = parseInt(globalConfig.getUpdateBatchSize(), 0);
+        long maxBytes = parseInt(globalConfig.getUpdateBatchMaxSize(), 0) * 1024L;
+
+        List<List<AgentProjectInfo>> batches = new ArrayList<>();
+        List<AgentProjectInfo> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            long projectBytes = estimateSize(projectInfo);
+            boolean full = (maxProjects > 0 && batch.size() >= maxProjects) ||
+                    (maxBytes > 0 && batchBytes + projectBytes > maxBytes);
+            // a project larger than the limit is still sent, alone
+            if (full && !batch.isEmpty()) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(projectInfo);
+            batchBytes += projectBytes;
+        }
+        if (!batch.isEmpty() || batches.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static long estimateSize(AgentProjectInfo projectInfo) {
+        return ESTIMATED_PROJECT_BYTES + ESTIMATED_DEPENDENCY_BYTES * countDependencies(projectInfo.getDependencies());
+    }
+
+    private static long countDependencies(Collection<DependencyInfo> dependencies) {
+        long count = 0;
+        if (dependencies != null) {
+            for (DependencyInfo dependency : dependencies) {
+                count += 1 + countDependencies(dependency.getChildren());
+            }
+        }
+        return count;
+    }
+
+    private void scanFinished() {
+        scanMillis = elapsedMillis(scanStartedAt);
+    }
+
+    private static long elapsedMillis(long startedAt) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return NumberUtils.isDigits(value) ? NumberUtils.toInt(value, defaultValue) : defaultValue;
+    }
+
+    private static synchronized ExecutorService getUpdateExecutor() {
+        if (updateExecutor == null) {
+            updateExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WhiteSource update " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return updateExecutor;
+    }
+
+    /**
+     * Checks policies, reusing the result of an earlier check of the same dependencies within the cache ttl,
+     * or rejecting known rejected libraries without the server.
+     */
+    private CheckPolicyComplianceResult checkPolicyCompliance(final CheckPolicyComplianceRequest policyRequest,
+                                                              final WhitesourceService service) throws WssServiceException, InterruptedException {
+        Deadline deadline = phaseDeadline(globalConfig.getPolicyCheckTimeout());
+        try {
+            return RequestRetry.send(RequestRetry.guard(serviceKey.getServiceUrl(), Secret.toString(jobApiToken), RequestStats.POLICY_CHECK),
+                    deadline, new RequestRetry.Request<CheckPolicyComplianceResult>() {
+                        @Override
+                        public CheckPolicyComplianceResult send() throws WssServiceException {
+                            return service.checkPolicyCompliance(policyRequest);
+                        }
+                    });
+        } catch (WssServiceException e) {
+            throw deadline.isExpired() ? timedOut("Policy check", e) : e;
+        }
+    }
+
+    /**
+     * @return The deadline of a phase with the given timeout in minutes, within the step deadline.
+     */
+    private Deadline phaseDeadline(String timeoutMinutes) {
+        return stepDeadline.min(Deadline.in(parseInt(timeoutMinutes, 0), TimeUnit.MINUTES));
+    }
+
+    private static WssServiceException timedOut(String phase, WssServiceException cause) {
+        WssServiceException e = new WssServiceException(phase + " timed out: " + cause.getMessage());
+        e.initCause(cause);
+        return e;
     }
 
     private void stopBuildOnError(Run<?, ?> run, boolean failOnError, TaskListener listener, Exception e) {
@@ -350,14 +863,30 @@ public class WhiteSourceStep {
 
     private void policyCheckReport(CheckPolicyComplianceResult result, Run<?, ?> run, TaskListener listener) //CheckPoliciesResult
             throws IOException, InterruptedException {
-        listener.getLogger().println("Generating policy check report");
+        listener.getLogger().println("Saving policy check report");
+
+        // rendered to HTML when opened
+        PolicyReportStore.get().store(run, result);
+
+        PolicyCheckReportAction action = new PolicyCheckReportAction(run, result);
+        rejections = action.getRejections();
+        run.addAction(action);
+    }
 
-        PolicyCheckReport report = new PolicyCheckReport(result,
-                run.getParent().getName(),
-                Integer.toString(run.getNumber()));
-        report.generate(run.getRootDir(), false);
+    private Future<Void> policyCheckReportAsync(final CheckPolicyComplianceResult result, final Run<?, ?> run,
+                                                final TaskListener listener) {
+        return getUpdateExecutor().submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                policyCheckReport(result, run, listener);
+                return null;
+            }
+        });
+    }
 
-        run.addAction(new PolicyCheckReportAction(run));
+    private void recordModuleFingerprints(Run<?, ?> run) {
+        if (moduleFingerprints != null && !moduleFingerprints.isEmpty()) {
+            run.addAction(new MavenModuleFingerprints(moduleFingerprints));
+        }
     }
 
     private void setApiToken(Secret jobApiToken) {
@@ -393,17 +922,53 @@ public class WhiteSourceStep {
                 (hudsonInstance != null && hudsonInstance.proxy != null);
     }
 
-    private void logUpdateResult(UpdateInventoryResult result, PrintStream logger) {
+    /**
+     * Logs the results of all update requests of the build as a single report.
+     */
+    private void logUpdateResults(List<UpdateInventoryResult> results, PrintStream logger) {
+        Collection<String> createdProjects = new ArrayList<>();
+        Collection<String> updatedProjects = new ArrayList<>();
+        Collection<String> requestTokens = new ArrayList<>();
+        for (UpdateInventoryResult result : results) {
+            createdProjects.addAll(result.getCreatedProjects());
+            updatedProjects.addAll(result.getUpdatedProjects());
+            if (StringUtils.isNotBlank(result.getRequestToken())) {
+                requestTokens.add(result.getRequestToken());
+            }
+        }
+
         logger.println("WhiteSource update results: ");
-        logger.println("WhiteSource organization: " + result.getOrganization());
-        logger.println(result.getCreatedProjects().size() + " Newly created projects:");
-        logger.println(StringUtils.join(result.getCreatedProjects(), ","));
-        logger.println(result.getUpdatedProjects().size() + " existing projects were updated:");
-        logger.println(StringUtils.join(result.getUpdatedProjects(), ","));
+        logger.println("WhiteSource organization: " + results.get(0).getOrganization());
+        logger.println(createdProjects.size() + " Newly created projects:");
+        logger.println(StringUtils.join(createdProjects, ","));
+        logger.println(updatedProjects.size() + " existing projects were updated:");
+        logger.println(StringUtils.join(updatedProjects, ","));
         // support token
-        String requestToken = result.getRequestToken();
-        if (StringUtils.isNotBlank(requestToken)) {
-            logger.println("WhiteSource Support Token: " + requestToken);
+        if (!requestTokens.isEmpty()) {
+            logger.println("WhiteSource Support Token: " + StringUtils.join(requestTokens, ","));
+        }
+    }
+
+    private void logAgentUpload(Run<?, ?> run, TaskListener listener, LibFolderUploader.Summary summary) {
+        PrintStream logger = listener.getLogger();
+        agentDependencies = summary.getDependencies();
+        if (summary.getDependencies() == 0) {
+            logger.println(Constants.OSS_INFO_NOT_FOUND);
+        } else if (!summary.isSent()) {
+            stopBuildOnError(run, globalConfig.isFailOnError(), listener, new WssServiceException(summary.getFailure()));
+            if (StringUtils.isNotBlank(summary.getRequestToken())) {
+                logger.println("Support Token: " + summary.getRequestToken());
+            }
+        } else {
+            logger.println("WhiteSource update results: ");
+            logger.println("WhiteSource organization: " + summary.getOrganization());
+            logger.println(summary.getCreatedProjects().size() + " Newly created projects:");
+            logger.println(StringUtils.join(summary.getCreatedProjects(), ","));
+            logger.println(summary.getUpdatedProjects().size() + " existing projects were updated:");
+            logger.println(StringUtils.join(summary.getUpdatedProjects(), ","));
+            if (StringUtils.isNotBlank(summary.getRequestToken())) {
+                logger.println("WhiteSource Support Token: " + summary.getRequestToken());
+            }
         }
     }
 
@@ -492,6 +1057,14 @@ public class WhiteSourceStep {
         this.libExcludes = libExcludes;
     }
 
+    public String getMavenDependencyLists() {
+        return mavenDependencyLists;
+    }
+
+    public void setMavenDependencyLists(String mavenDependencyLists) {
+        this.mavenDependencyLists = mavenDependencyLists;
+    }
+
     public Secret getMavenProjectToken() {
         return mavenProjectToken;
     }
@@ -540,6 +1113,14 @@ public class WhiteSourceStep {
         this.ignorePomModules = ignorePomModules;
     }
 
+    public boolean isSkipUnchangedModules() {
+        return skipUnchangedModules;
+    }
+
+    public void setSkipUnchangedModules(boolean skipUnchangedModules) {
+        this.skipUnchangedModules = skipUnchangedModules;
+    }
+
     public String getProductNameOrToken() {
         return productNameOrToken;
     }
@@ -632,4 +1213,309 @@ public class WhiteSourceStep {
 
         return projects;
     }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Scan of a workspace running on its agent, cancelled if not done by its deadline.
+     *
+     * @param <T> Result of the scan, turned into projects once it completes.
+     */
+    public abstract class PendingScan<T> {
+
+        private final Future<T> future;
+        private final EarlyPolicyCheck earlyPolicyCheck;
+        private final Deadline deadline;
+
+        private PendingScan(Future<T> future, EarlyPolicyCheck earlyPolicyCheck, Deadline deadline) {
+            this.future = future;
+            this.earlyPolicyCheck = earlyPolicyCheck;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return True once the scan is done or timed out.
+         */
+        public boolean isDone() {
+            return future.isDone() || deadline.isExpired();
+        }
+
+        public void cancel() {
+            future.cancel(true);
+            if (earlyPolicyCheck != null) {
+                earlyPolicyCheck.finish();
+            }
+        }
+
+        /**
+         * @return The projects found by the scan, waiting for it until its deadline.
+         */
+        public Collection<AgentProjectInfo> getProjectInfos() throws IOException, InterruptedException {
+            T result;
+            try {
+                result = deadline.isBounded() ? future.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS) : future.get();
+            } catch (TimeoutException e) {
+                cancel();
+                throw new AbortException("Scanning the workspace timed out");
+            } catch (ExecutionException e) {
+                if (isRejectedEarly()) {
+                    // the scan was stopped on a rejection, already reported
+                    scanFinished();
+                    return Collections.emptyList();
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+            if (isRejectedEarly()) {
+                // rejected as the scan completed, already reported
+                scanFinished();
+                return Collections.emptyList();
+            }
+            Collection<AgentProjectInfo> projectInfos = toProjectInfos(result);
+            scanFinished();
+            return projectInfos;
+        }
+
+        /**
+         * @return True if the libraries were rejected while scanning, once the rejection is reported.
+         */
+        private boolean isRejectedEarly() {
+            if (earlyPolicyCheck == null) {
+                return false;
+            }
+            earlyPolicyCheck.finish();
+            return earlyPolicyCheck.isRejected();
+        }
+
+        protected abstract Collection<AgentProjectInfo> toProjectInfos(T result);
+    }
+
+    /**
+     * Checks the policies of the batches of dependencies found by a workspace scan, one batch at a time.
+     * A rejection is reported right away and stops the scan.
+     */
+    private class EarlyPolicyCheck implements DependencySink, Runnable {
+
+        private final Run<?, ?> run;
+        private final TaskListener listener;
+        private final GenericOssInfoExtractor extractor;
+        private final Deque<List<RemoteDependency>> pending = new ArrayDeque<>();
+        private boolean draining;
+        private boolean reporting;
+        private boolean finished;
+        private volatile boolean rejected;
+
+        private EarlyPolicyCheck(Run<?, ?> run, TaskListener listener, GenericOssInfoExtractor extractor) {
+            this.run = run;
+            this.listener = listener;
+            this.extractor = extractor;
+        }
+
+        public synchronized boolean offer(List<RemoteDependency> dependencies) {
+            if (rejected) {
+                return false;
+            }
+            if (!finished) {
+                pending.addLast(dependencies);
+                if (!draining) {
+                    draining = true;
+                    getUpdateExecutor().submit(this);
+                }
+            }
+            return true;
+        }
+
+        public void run() {
+            List<RemoteDependency> batch;
+            while ((batch = next()) != null) {
+                try {
+                    check(batch);
+                } catch (WssServiceException | IOException | RuntimeException e) {
+                    // the check of the complete scan decides
+                    listener.getLogger().println("Failed to check policies while scanning: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    synchronized (this) {
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        boolean isRejected() {
+            return rejected;
+        }
+
+        /**
+         * Stops checking, once a rejection being reported is done.
+         */
+        synchronized void finish() {
+            finished = true;
+            pending.clear();
+            while (reporting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private synchronized List<RemoteDependency> next() {
+            List<RemoteDependency> batch = finished || rejected ? null : pending.pollFirst();
+            if (batch == null) {
+                draining = false;
+            }
+            return batch;
+        }
+
+        private void check(List<RemoteDependency> batch) throws WssServiceException, IOException, InterruptedException {
+            CheckPolicyComplianceRequest policyRequest = new CheckPolicyComplianceRequest(Secret.toString(jobApiToken),
+                    extractor.toProjectInfos(batch), checkAllLibraries);
+            policyRequest.setProduct(productNameOrToken);
+            policyRequest.setProductVersion(productVersion);
+            policyRequest.setUserKey(Secret.toString(jobUserKey));
+            CheckPolicyComplianceResult result;
+            WhitesourceService service = WhitesourceServicePool.get().acquire(serviceKey);
+            try {
+                result = checkPolicyCompliance(policyRequest, service);
+            } finally {
+                WhitesourceServicePool.get().release(service);
+            }
+            if (!result.hasRejections()) {
+                return;
+            }
+
+            synchronized (this) {
+                if (finished) {
+                    // the scan is complete, the check of all libraries reports it
+                    return;
+                }
+                reporting = true;
+            }
+            try {
+                String message = "Open source rejected by organization policies.";
+                listener.getLogger().println("Rejected libraries found while scanning, stopping the scan");
+                if (globalConfig.isFailOnError()) {
+                    stopBuild(run, listener, message);
+                } else {
+                    listener.getLogger().println(message);
+                }
+                policyCheckReport(result, run, listener);
+            } finally {
+                synchronized (this) {
+                    rejected = true;
+                    reporting = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the update batches not yet picked up by another worker, retrying each failed batch on its own.
+     */
+    private class UpdateTask {
+
+        private final Secret orgToken;
+        private final String requesterEmail;
+        private final String productNameOrToken;
+        private final String productVersion;
+        private final Secret userKey;
+        private final List<List<AgentProjectInfo>> batches;
+        private final UpdateInventoryResult[] results;
+        private final Deadline deadline;
+        private final PrintStream logger;
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        private UpdateTask(Secret orgToken, String requesterEmail, String productNameOrToken, String productVersion, Secret userKey,
+                           List<List<AgentProjectInfo>> batches, UpdateInventoryResult[] results, Deadline deadline, PrintStream logger) {
+            this.orgToken = orgToken;
+            this.requesterEmail = requesterEmail;
+            this.productNameOrToken = productNameOrToken;
+            this.productVersion = productVersion;
+            this.userKey = userKey;
+            this.batches = batches;
+            this.results = results;
+            this.deadline = deadline;
+            this.logger = logger;
+        }
+
+        void run(WhitesourceService service) {
+            int index;
+            while (!cancelled && (index = next.getAndIncrement()) < batches.size()) {
+                results[index] = sendBatch(index, service);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private UpdateInventoryResult sendBatch(int index, final WhitesourceService service) {
+            String prefix = batches.size() > 1 ? "[" + (index + 1) + "/" + batches.size() + "] " : Constants.EMPTY_STRING;
+            int retries = parseInt(globalConfig.getConnectionRetries(), 1);
+            int interval = parseInt(globalConfig.getConnectionRetriesInterval(), 30);
+
+            for (int attempt = 0; retries-- > -1 && !cancelled; attempt++) {
+                if (deadline.isExpired()) {
+                    logger.println(prefix + "Update timed out, no more attempts");
+                    cancel();
+                    break;
+                }
+                try {
+                    final UpdateInventoryRequest updateRequest = new UpdateInventoryRequest(Secret.toString(orgToken),
+                            productNameOrToken, productVersion, batches.get(index), Secret.toString(userKey), null);
+                    updateRequest.setRequesterEmail(requesterEmail);
+                    UpdateInventoryResult updateResult = RequestRetry.send(
+                            RequestRetry.guard(serviceKey.getServiceUrl(), Secret.toString(orgToken), RequestStats.UPDATE), deadline,
+                            new RequestRetry.Request<UpdateInventoryResult>() {
+                                @Override
+                                public UpdateInventoryResult send() throws WssServiceException {
+                                    return service.update(updateRequest);
+                                }
+                            });
+                    if (updateResult != null) {
+                        return updateResult;
+                    }
+                } catch (InterruptedException e) {
+                    logger.println(prefix + "Interrupted while waiting to send the request");
+                    cancel();
+                    Thread.currentThread().interrupt();
+                } catch (RequestRetry.NotSentException e) {
+                    // fail fast instead of waiting out the retries of every build
+                    logger.println(prefix + e.getMessage());
+                    cancel();
+                } catch (WssServiceException e) {
+                    logger.println(prefix + "Failed to send request to WhiteSource server: " + e.getMessage());
+                    if (RequestRetry.isRetryable(e)) {
+                        logger.println(prefix + "Trying " + (retries + 1) + " more time" + (retries != 0 ? "s" : Constants.EMPTY_STRING));
+                    } else {
+                        retries = -1;
+                    }
+
+                    if (retries > -1) {
+                        try {
+                            // the last attempt starts before the deadline at the latest
+                            Thread.sleep(Math.min(RequestRetry.delay(interval, attempt), deadline.remaining(TimeUnit.MILLISECONDS)));
+                        } catch (InterruptedException e1) {
+                            logger.println("Failed to sleep while retrying to connect to server " + e1.getMessage());
+                            cancel();
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -16,12 +16,14 @@
 
 package org.whitesource.jenkins.pipeline;
 
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
+import jenkins.util.Timer;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.steps.*;
@@ -33,13 +35,25 @@ import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.jenkins.Constants;
 import org.whitesource.jenkins.model.WhiteSourceDescriptor;
 import org.whitesource.jenkins.model.WhiteSourceStep;
+import org.whitesource.jenkins.service.PolicyCheckCache;
+import org.whitesource.jenkins.service.PolicySnapshot;
+import org.whitesource.jenkins.service.WhitesourceServicePool;
 
 import javax.annotation.Nonnull;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -70,6 +84,8 @@ public class WhiteSourcePipelineStep extends Step {
 
     private String libExcludes;
 
+    private String mavenDependencyLists;
+
     /* --- Constructor --- */
 
     @DataBoundConstructor
@@ -191,6 +207,15 @@ public class WhiteSourcePipelineStep extends Step {
         this.libExcludes = libExcludes;
     }
 
+    public String getMavenDependencyLists() {
+        return mavenDependencyLists;
+    }
+
+    @DataBoundSetter
+    public void setMavenDependencyLists(String mavenDependencyLists) {
+        this.mavenDependencyLists = mavenDependencyLists;
+    }
+
     /* --- Nested classes --- */
 
     @Extension
@@ -212,6 +237,21 @@ public class WhiteSourcePipelineStep extends Step {
         private String connectionTimeout;
         private String connectionRetries;
         private String connectionRetriesInterval;
+        private String updateBatchSize;
+        private String updateBatchMaxSize;
+        private String updateConcurrency;
+        private boolean deferredUpload;
+        private String policyCacheTtl;
+        private String coalesceWindow;
+        private boolean coalesceLastWriterWins;
+        private boolean agentSideUpload;
+        private boolean optimisticUpdate;
+        private boolean earlyRejection;
+        private String policySnapshotRefresh;
+        private String stepTimeout;
+        private String scanTimeout;
+        private String policyCheckTimeout;
+        private String updateTimeout;
 
         /* --- Constructor --- */
 
@@ -262,8 +302,28 @@ public class WhiteSourcePipelineStep extends Step {
             connectionTimeout = json.getString(Constants.CONNECTION_TIMEOUT);
             connectionRetries = json.getString(Constants.CONNECTION_RETRIES);
             connectionRetriesInterval = json.getString(Constants.CONNECTION_RETRIES_INTERVAL);
+            updateBatchSize = json.getString(Constants.UPDATE_BATCH_SIZE);
+            updateBatchMaxSize = json.getString(Constants.UPDATE_BATCH_MAX_SIZE);
+            updateConcurrency = json.getString(Constants.UPDATE_CONCURRENCY);
+            deferredUpload = json.getBoolean(Constants.DEFERRED_UPLOAD);
+            policyCacheTtl = json.getString(Constants.POLICY_CACHE_TTL);
+            coalesceWindow = json.getString(Constants.COALESCE_WINDOW);
+            coalesceLastWriterWins = json.getBoolean(Constants.COALESCE_LAST_WRITER_WINS);
+            agentSideUpload = json.getBoolean(Constants.AGENT_SIDE_UPLOAD);
+            optimisticUpdate = json.getBoolean(Constants.OPTIMISTIC_UPDATE);
+            earlyRejection = json.getBoolean(Constants.EARLY_REJECTION);
+            policySnapshotRefresh = json.getString(Constants.POLICY_SNAPSHOT_REFRESH);
+            stepTimeout = json.getString(Constants.STEP_TIMEOUT);
+            scanTimeout = json.getString(Constants.SCAN_TIMEOUT);
+            policyCheckTimeout = json.getString(Constants.POLICY_CHECK_TIMEOUT);
+            updateTimeout = json.getString(Constants.UPDATE_TIMEOUT);
 
             save();
+            // pooled clients were built from the previous settings
+            WhitesourceServicePool.get().invalidate();
+            // policy check results may depend on the previous settings
+            PolicyCheckCache.get().invalidate();
+            PolicySnapshot.get().invalidate();
 
             return super.configure(req, json);
         }
@@ -289,6 +349,56 @@ public class WhiteSourcePipelineStep extends Step {
             return formValidation;
         }
 
+        public FormValidation doCheckUpdateBatchSize(@QueryParameter String updateBatchSize) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateBatchSize);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateBatchMaxSize(@QueryParameter String updateBatchMaxSize) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateBatchMaxSize);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateConcurrency(@QueryParameter String updateConcurrency) {
+            FormValidation formValidation = FormValidation.validatePositiveInteger(updateConcurrency);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicyCacheTtl(@QueryParameter String policyCacheTtl) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policyCacheTtl);
+            return formValidation;
+        }
+
+        public FormValidation doCheckCoalesceWindow(@QueryParameter String coalesceWindow) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(coalesceWindow);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicySnapshotRefresh(@QueryParameter String policySnapshotRefresh) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policySnapshotRefresh);
+            return formValidation;
+        }
+
+        public FormValidation doCheckStepTimeout(@QueryParameter String stepTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(stepTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckScanTimeout(@QueryParameter String scanTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(scanTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckPolicyCheckTimeout(@QueryParameter String policyCheckTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(policyCheckTimeout);
+            return formValidation;
+        }
+
+        public FormValidation doCheckUpdateTimeout(@QueryParameter String updateTimeout) {
+            FormValidation formValidation = FormValidation.validateNonNegativeInteger(updateTimeout);
+            return formValidation;
+        }
+
         /* --- Getters / Setters --- */
 
         public String getServiceUrl() {
@@ -399,16 +509,167 @@ public class WhiteSourcePipelineStep extends Step {
             this.connectionRetriesInterval = connectionRetriesInterval;
         }
 
+        public String getUpdateBatchSize() {
+            return updateBatchSize;
+        }
+
+        public void setUpdateBatchSize(String updateBatchSize) {
+            this.updateBatchSize = updateBatchSize;
+        }
+
+        public String getUpdateBatchMaxSize() {
+            return updateBatchMaxSize;
+        }
+
+        public void setUpdateBatchMaxSize(String updateBatchMaxSize) {
+            this.updateBatchMaxSize = updateBatchMaxSize;
+        }
+
+        public String getUpdateConcurrency() {
+            return updateConcurrency;
+        }
+
+        public void setUpdateConcurrency(String updateConcurrency) {
+            this.updateConcurrency = updateConcurrency;
+        }
+
+        public boolean isDeferredUpload() {
+            return deferredUpload;
+        }
+
+        public void setDeferredUpload(boolean deferredUpload) {
+            this.deferredUpload = deferredUpload;
+        }
+
+        public String getPolicyCacheTtl() {
+            return policyCacheTtl;
+        }
+
+        public void setPolicyCacheTtl(String policyCacheTtl) {
+            this.policyCacheTtl = policyCacheTtl;
+        }
+
+        public String getCoalesceWindow() {
+            return coalesceWindow;
+        }
+
+        public void setCoalesceWindow(String coalesceWindow) {
+            this.coalesceWindow = coalesceWindow;
+        }
+
+        public boolean isCoalesceLastWriterWins() {
+            return coalesceLastWriterWins;
+        }
+
+        public void setCoalesceLastWriterWins(boolean coalesceLastWriterWins) {
+            this.coalesceLastWriterWins = coalesceLastWriterWins;
+        }
+
+        public boolean isAgentSideUpload() {
+            return agentSideUpload;
+        }
+
+        public void setAgentSideUpload(boolean agentSideUpload) {
+            this.agentSideUpload = agentSideUpload;
+        }
+
+        public boolean isOptimisticUpdate() {
+            return optimisticUpdate;
+        }
+
+        public void setOptimisticUpdate(boolean optimisticUpdate) {
+            this.optimisticUpdate = optimisticUpdate;
+        }
+
+        public boolean isEarlyRejection() {
+            return earlyRejection;
+        }
+
+        public void setEarlyRejection(boolean earlyRejection) {
+            this.earlyRejection = earlyRejection;
+        }
+
+        public String getPolicySnapshotRefresh() {
+            return policySnapshotRefresh;
+        }
+
+        public void setPolicySnapshotRefresh(String policySnapshotRefresh) {
+            this.policySnapshotRefresh = policySnapshotRefresh;
+        }
+
+        public String getStepTimeout() {
+            return stepTimeout;
+        }
+
+        public void setStepTimeout(String stepTimeout) {
+            this.stepTimeout = stepTimeout;
+        }
+
+        public String getScanTimeout() {
+            return scanTimeout;
+        }
+
+        public void setScanTimeout(String scanTimeout) {
+            this.scanTimeout = scanTimeout;
+        }
+
+        public String getPolicyCheckTimeout() {
+            return policyCheckTimeout;
+        }
+
+        public void setPolicyCheckTimeout(String policyCheckTimeout) {
+            this.policyCheckTimeout = policyCheckTimeout;
+        }
+
+        public String getUpdateTimeout() {
+            return updateTimeout;
+        }
+
+        public void setUpdateTimeout(String updateTimeout) {
+            this.updateTimeout = updateTimeout;
+        }
+
     }
 
-    private static class Execution extends SynchronousNonBlockingStepExecution<Void> {
+    /**
+     * Runs the step without holding a thread while the agent scans the workspace.
+     * The scan is polled from the shared timer. The update then blocks a thread of a bounded pool
+     * through its HTTP requests, retries and coalescing: the agent client has no non-blocking API.
+     * Updates beyond {@link #MAX_UPDATE_THREADS} wait in line, so a slow server cannot exhaust the threads of the controller.
+     */
+    private static class Execution extends StepExecution {
 
         private static final long serialVersionUID = 8178356851772162243L;
 
+        private static final long MIN_POLL_INTERVAL = 100;
+        private static final long MAX_POLL_INTERVAL = 2000;
+
+        /**
+         * Updates sent at the same time by all pipelines, the others wait for a thread.
+         */
+        private static final int MAX_UPDATE_THREADS =
+                Math.max(1, Integer.getInteger(WhiteSourcePipelineStep.class.getName() + ".maxUpdateThreads", 16));
+
+        private static final long UPDATE_THREAD_KEEP_ALIVE = 60;
+
+        private static ExecutorService updateExecutor;
+
         /* --- Members --- */
 
         private transient final WhiteSourcePipelineStep step;
 
+        private transient volatile WhiteSourceStep.PendingScan<?> scan;
+
+        private transient volatile Future<?> update;
+
+        private transient volatile boolean stopped;
+
+        /**
+         * Set by whichever of the update and {@link #stop(Throwable)} completes the step first.
+         * Serialized with the execution, so it is there when a resumed build is stopped.
+         */
+        private final AtomicBoolean completed = new AtomicBoolean();
+
         /* --- Constructor --- */
 
         protected Execution(@Nonnull StepContext context, WhiteSourcePipelineStep step) {
@@ -422,34 +683,140 @@ public class WhiteSourcePipelineStep extends Step {
          * Fires step right after build job ends
          */
         @Override
-        public Void run() throws Exception {
-            TaskListener listener = getContext().get(TaskListener.class);
+        public boolean start() throws Exception {
+            final TaskListener listener = getContext().get(TaskListener.class);
             assert listener != null;
-            PrintStream logger = listener.getLogger();
+            final PrintStream logger = listener.getLogger();
             logger.println(Constants.UPDATING_WHITESOURCE);
 
-            Run run = getContext().get(Run.class);
+            final Run run = getContext().get(Run.class);
 
-            WhiteSourceStep whiteSourceStep = new WhiteSourceStep(step, new WhiteSourceDescriptor((DescriptorImpl) step.getDescriptor()));
+            final WhiteSourceStep whiteSourceStep = new WhiteSourceStep(step, new WhiteSourceDescriptor((DescriptorImpl) step.getDescriptor()));
 
             // make sure we have an organization token
             if (StringUtils.isBlank(Secret.toString(whiteSourceStep.getJobApiToken()))) {
                 logger.println(Constants.INVALID_API_TOKEN);
-                return null;
+                getContext().onSuccess(null);
+                return true;
             }
 
             FilePath workspace = getContext().get(FilePath.class);
-            Collection<AgentProjectInfo> projectInfos = whiteSourceStep.getProjectInfos(run, listener, workspace, true);
-//            if (projectInfos == null) {
-//                whiteSourceStep.stopBuild(run, listener, "Unrecognized build type " + run.getClass().getName());
-//                return null;
-//            } else
-            if (projectInfos.isEmpty()) {
-                logger.println(Constants.OSS_INFO_NOT_FOUND);
-            } else {
-                whiteSourceStep.update(run, listener, projectInfos);
+            if (workspace == null) {
+                throw new AbortException("Failed to acquire the Build's workspace");
+            }
+            if (whiteSourceStep.isAgentUpload(run)) {
+                // the agent sends the dependencies itself, only the result summary comes back
+                scan = whiteSourceStep.uploadFromAgent(run, listener, workspace);
+                poll(MIN_POLL_INTERVAL, new Runnable() {
+                    public void run() {
+                        try {
+                            scan.getProjectInfos();
+                            whiteSourceStep.recordTrend(run, listener, Collections.<AgentProjectInfo>emptyList());
+                            succeed();
+                        } catch (Throwable e) {
+                            fail(e);
+                        }
+                    }
+                });
+                return false;
+            }
+
+            scan = whiteSourceStep.getProjectInfosAsync(run, listener, workspace);
+            poll(MIN_POLL_INTERVAL, new Runnable() {
+                public void run() {
+                    try {
+                        Collection<AgentProjectInfo> projectInfos = scan.getProjectInfos();
+                        if (whiteSourceStep.isRejectedByPolicies()) {
+                            logger.println("Update skipped, rejected by policies while scanning");
+                        } else if (projectInfos.isEmpty()) {
+                            logger.println(Constants.OSS_INFO_NOT_FOUND);
+                        } else if (!stopped) {
+                            whiteSourceStep.update(run, listener, projectInfos);
+                        }
+                        if (!stopped) {
+                            whiteSourceStep.recordTrend(run, listener, projectInfos);
+                        }
+                        succeed();
+                    } catch (Throwable e) {
+                        fail(e);
+                    }
+                }
+            });
+            return false;
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            stopped = true;
+            WhiteSourceStep.PendingScan<?> pendingScan = scan;
+            if (pendingScan != null) {
+                pendingScan.cancel();
+            }
+            Future<?> pendingUpdate = update;
+            if (pendingUpdate != null) {
+                pendingUpdate.cancel(true);
+            }
+            fail(cause);
+        }
+
+        @Override
+        public void onResume() {
+            // the scan and the upload are gone with the previous controller process
+            fail(new AbortException("Jenkins restarted while updating WhiteSource, run the step again"));
+        }
+
+        /* --- Private methods --- */
+
+        /**
+         * Completes the step unless stopped, the update swallows the interrupt of a stop.
+         */
+        private void succeed() {
+            if (!stopped && completed.compareAndSet(false, true)) {
+                getContext().onSuccess(null);
+            }
+        }
+
+        private void fail(Throwable cause) {
+            if (completed.compareAndSet(false, true)) {
+                getContext().onFailure(cause);
+            }
+        }
+
+        /**
+         * Checks the scan from the shared timer, backing off while the agent is busy, then submits the update.
+         */
+        private void poll(final long interval, final Runnable updateTask) {
+            Timer.get().schedule(new Runnable() {
+                public void run() {
+                    if (stopped) {
+                        return;
+                    }
+                    if (scan.isDone()) {
+                        update = getUpdateExecutor().submit(updateTask);
+                    } else {
+                        poll(Math.min(interval * 2, MAX_POLL_INTERVAL), updateTask);
+                    }
+                }
+            }, interval, TimeUnit.MILLISECONDS);
+        }
+
+        private static synchronized ExecutorService getUpdateExecutor() {
+            if (updateExecutor == null) {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_UPDATE_THREADS, MAX_UPDATE_THREADS,
+                        UPDATE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "WhiteSource pipeline update " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                // idle threads are released after a minute
+                executor.allowCoreThreadTimeOut(true);
+                updateExecutor = executor;
             }
-            return null;
+            return updateExecutor;
         }
     }
 }
@@ -0,0 +1,179 @@
+package org.whitesource.jenkins.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide circuit breaker of a WhiteSource service url.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive connection failures the circuit opens and builds stop calling the
+ * service until the open period elapses. A single probe request is then let through: success closes the circuit,
+ * failure opens it again for twice as long, up to {@link #MAX_OPEN_PERIOD}.
+ */
+public final class CircuitBreaker {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public static final int FAILURE_THRESHOLD = 5;
+
+    public static final long OPEN_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    public static final long MAX_OPEN_PERIOD = TimeUnit.MINUTES.toMillis(15);
+
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /* --- Members --- */
+
+    private final String serviceUrl;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long openPeriod = OPEN_PERIOD;
+    private long probeStartedAt;
+    private long lastFailureAt;
+
+    /* --- Constructors --- */
+
+    private CircuitBreaker(String serviceUrl) {
+        this.serviceUrl = serviceUrl;
+    }
+
+    /* --- Static methods --- */
+
+    public static CircuitBreaker forUrl(String serviceUrl) {
+        String key = serviceUrl == null ? "" : serviceUrl;
+        CircuitBreaker breaker = BREAKERS.get(key);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(key);
+            breaker = BREAKERS.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * <b>Important: </b> do not remove since it is used in the global jelly config files.
+     *
+     * @return The breakers of all service urls called since startup.
+     */
+    public static List<CircuitBreaker> all() {
+        List<CircuitBreaker> breakers = new ArrayList<>(BREAKERS.values());
+        Collections.sort(breakers, new Comparator<CircuitBreaker>() {
+            public int compare(CircuitBreaker o1, CircuitBreaker o2) {
+                return o1.serviceUrl.compareTo(o2.serviceUrl);
+            }
+        });
+        return breakers;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return True if a request may be sent, false while the circuit is open.
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openedAt + openPeriod) {
+            state = State.HALF_OPEN;
+            probeStartedAt = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            // a single probe at a time, another one if the previous never reported back
+            if (probeStartedAt == 0 || now >= probeStartedAt + OPEN_PERIOD) {
+                probeStartedAt = now;
+                return true;
+            }
+            return false;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Records a request the server answered, even with an error.
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "WhiteSource service {0} is reachable again", serviceUrl);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        openPeriod = OPEN_PERIOD;
+    }
+
+    /**
+     * Records a request that failed to reach the server.
+     */
+    public synchronized void recordFailure() {
+        long now = System.currentTimeMillis();
+        lastFailureAt = now;
+        failures++;
+        if (state == State.HALF_OPEN) {
+            open(now, Math.min(openPeriod * 2, MAX_OPEN_PERIOD));
+        } else if (state == State.CLOSED && failures >= FAILURE_THRESHOLD) {
+            open(now, OPEN_PERIOD);
+        }
+    }
+
+    /**
+     * Gives back the turn of a request that was not sent or failed for a reason unrelated to the server,
+     * so the next request may probe a half open circuit right away.
+     */
+    public synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probeStartedAt = 0;
+        }
+    }
+
+    /**
+     * @return Milliseconds until the next probe request is let through, 0 if requests are allowed.
+     */
+    public synchronized long getRetryAfter() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openedAt + openPeriod - System.currentTimeMillis());
+    }
+
+    public long getRetryAfterSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(getRetryAfter());
+    }
+
+    public String getServiceUrl() {
+        return serviceUrl;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    public synchronized Date getLastFailure() {
+        return lastFailureAt == 0 ? null : new Date(lastFailureAt);
+    }
+
+    /* --- Private methods --- */
+
+    private void open(long now, long period) {
+        LOGGER.log(Level.WARNING, "WhiteSource service {0} failed {1} times in a row, pausing requests for {2} seconds",
+                new Object[]{serviceUrl, failures, TimeUnit.MILLISECONDS.toSeconds(period)});
+        state = State.OPEN;
+        openedAt = now;
+        openPeriod = period;
+    }
+}
@@ -0,0 +1,111 @@
+package org.whitesource.jenkins.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a phase of the WhiteSource step must be done.
+ * <p>
+ * The deadline of the request being sent by a thread is made current with {@link #enter()},
+ * so the service client can turn the remaining time into the timeouts of the HTTP request.
+ */
+public final class Deadline {
+
+    /* --- Static members --- */
+
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Longer timeouts are taken as no limit, keeping clear of {@link System#nanoTime()} overflow.
+     */
+    private static final long MAX_TIMEOUT_NANOS = TimeUnit.DAYS.toNanos(365);
+
+    /* --- Members --- */
+
+    private final long expiresAt;
+    private final boolean bounded;
+
+    /* --- Constructors --- */
+
+    private Deadline(long expiresAt, boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return Deadline after the given time from now, no deadline if not positive.
+     */
+    public static Deadline in(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        if (nanos <= 0 || nanos > MAX_TIMEOUT_NANOS) {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + nanos, true);
+    }
+
+    /**
+     * @return The deadline of the request being sent by the current thread, {@link #NONE} if none.
+     */
+    public static Deadline current() {
+        Deadline deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline;
+    }
+
+    /**
+     * Restores the deadline current before {@link #enter()}.
+     */
+    public static void exit(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Makes this deadline current for the requests sent by the current thread.
+     *
+     * @return The previous deadline, to be passed to {@link #exit(Deadline)}.
+     */
+    public Deadline enter() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    /**
+     * @return The earliest of both deadlines.
+     */
+    public Deadline min(Deadline other) {
+        if (!other.bounded) {
+            return this;
+        }
+        if (!bounded) {
+            return other;
+        }
+        return expiresAt - other.expiresAt <= 0 ? this : other;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @return Time left, 0 once expired and {@link Long#MAX_VALUE} if not bounded.
+     */
+    public long remaining(TimeUnit unit) {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0, expiresAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,347 @@
+package org.whitesource.jenkins.service;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.jenkins.DeferredUploadAction;
+import org.whitesource.jenkins.WhiteSourcePublisher;
+import org.whitesource.jenkins.model.WhiteSourceDescriptor;
+import org.whitesource.jenkins.model.WhiteSourceStep;
+import org.whitesource.jenkins.pipeline.WhiteSourcePipelineStep;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable queue of update requests sent in the background, for builds that don't wait for the WhiteSource server.
+ * <p>
+ * Each request is written to its own compressed file under <code>$JENKINS_HOME/whitesource/queue</code>
+ * and deleted once sent, so requests queued before a restart are sent after it.
+ * At most {@link #DISPATCH_THREADS} requests are sent at a time, oldest first.
+ * Requests are kept while the service is unavailable and dropped after {@link #MAX_ATTEMPTS} failures,
+ * or right away when the server rejects them.
+ */
+public final class DeferredUploadQueue {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(DeferredUploadQueue.class.getName());
+
+    public static final int DISPATCH_THREADS = 2;
+
+    public static final int MAX_ATTEMPTS = 30;
+
+    private static final String QUEUE_FOLDER = "whitesource" + File.separator + "queue";
+    private static final String ENTRY_SUFFIX = ".xml.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final DeferredUploadQueue INSTANCE = new DeferredUploadQueue();
+
+    /* --- Members --- */
+
+    private final Set<String> inFlight = new HashSet<>();
+
+    private ExecutorService dispatcher;
+
+    /* --- Constructors --- */
+
+    private DeferredUploadQueue() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static DeferredUploadQueue get() {
+        return INSTANCE;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Writes the request to disk and schedules it to be sent.
+     */
+    public void enqueue(Run<?, ?> run, Entry entry) throws IOException {
+        File folder = getFolder();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Failed to create folder " + folder);
+        }
+        // the action is in place before the dispatcher can complete it
+        run.addAction(new DeferredUploadAction());
+        run.save();
+
+        // names sort in queue order
+        String name = String.format("%013d-%s%s", System.currentTimeMillis(), UUID.randomUUID(), ENTRY_SUFFIX);
+        write(new File(folder, name), entry);
+        flush();
+    }
+
+    /**
+     * Schedules the queued requests not being sent yet, up to the dispatcher capacity.
+     */
+    public void flush() {
+        File[] files = getFolder().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(ENTRY_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (final File file : files) {
+            synchronized (this) {
+                if (inFlight.size() >= DISPATCH_THREADS) {
+                    return;
+                }
+                if (!inFlight.add(file.getName())) {
+                    continue;
+                }
+            }
+            getDispatcher().submit(new Runnable() {
+                public void run() {
+                    boolean dispatched = false;
+                    try {
+                        dispatched = dispatch(file);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to send queued WhiteSource update " + file.getName(), e);
+                    } finally {
+                        synchronized (DeferredUploadQueue.this) {
+                            inFlight.remove(file.getName());
+                        }
+                    }
+                    if (dispatched) {
+                        // move on to the next request right away
+                        flush();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Number of requests waiting to be sent.
+     */
+    public int size() {
+        String[] names = getFolder().list();
+        int size = 0;
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * @return True if the request is done with, false if it is left for a later attempt.
+     */
+    private boolean dispatch(File file) {
+        Entry entry;
+        try {
+            entry = read(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Dropping unreadable queued WhiteSource update " + file.getName(), e);
+            delete(file);
+            return true;
+        }
+
+        WhiteSourceStep step = new WhiteSourceStep(getGlobalConfig(entry.pipeline), entry.orgToken, null, null, entry.userKey);
+        if (!step.isServiceAvailable()) {
+            // wait for the circuit to close, without counting it as a failed attempt
+            return false;
+        }
+
+        TaskListener listener = new LogTaskListener(LOGGER, Level.FINE);
+        try {
+            List<UpdateInventoryResult> results = step.sendDeferred(entry.product, entry.productVersion, entry.requesterEmail,
+                    entry.projects, listener);
+            delete(file);
+            complete(entry, DeferredUploadAction.sent(results));
+        } catch (Exception e) {
+            entry.attempts++;
+            LOGGER.log(Level.INFO, "Failed to send queued WhiteSource update of {0} #{1}, attempt {2}: {3}",
+                    new Object[]{entry.jobName, entry.buildNumber, entry.attempts, e.getMessage()});
+            // a request the server rejected fails the same way every time
+            boolean retryable = e instanceof WssServiceException && RequestRetry.isRetryable((WssServiceException) e);
+            if (!retryable || entry.attempts >= MAX_ATTEMPTS) {
+                delete(file);
+                complete(entry, DeferredUploadAction.failed(e.getMessage()));
+                return true;
+            }
+            try {
+                write(file, entry);
+            } catch (IOException e1) {
+                LOGGER.log(Level.WARNING, "Failed to update queued WhiteSource update " + file.getName(), e1);
+            }
+            // retried on the next run of the periodic dispatcher
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Attaches the outcome to the build that queued the request, if it still exists.
+     * <p>
+     * A build still running saves the outcome itself when it completes, it is only saved here once completed.
+     */
+    private void complete(Entry entry, DeferredUploadAction outcome) {
+        Jenkins jenkins = Jenkins.getInstance();
+        Job<?, ?> job = jenkins == null ? null : jenkins.getItemByFullName(entry.jobName, Job.class);
+        Run<?, ?> run = job == null ? null : job.getBuildByNumber(entry.buildNumber);
+        if (run == null) {
+            return;
+        }
+        try {
+            DeferredUploadAction action = run.getAction(DeferredUploadAction.class);
+            if (action == null) {
+                run.addAction(outcome);
+            } else {
+                action.update(outcome);
+            }
+            if (!run.isBuilding()) {
+                run.save();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the WhiteSource update result of " + run, e);
+        }
+    }
+
+    private static WhiteSourceDescriptor getGlobalConfig(boolean pipeline) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        if (pipeline) {
+            return new WhiteSourceDescriptor(jenkins.getDescriptorByType(WhiteSourcePipelineStep.DescriptorImpl.class));
+        }
+        return new WhiteSourceDescriptor(jenkins.getDescriptorByType(WhiteSourcePublisher.DescriptorImpl.class));
+    }
+
+    private static File getFolder() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        return new File(jenkins.getRootDir(), QUEUE_FOLDER);
+    }
+
+    private static void write(File file, Entry entry) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)), StandardCharsets.UTF_8)) {
+            // secrets are written encrypted
+            Jenkins.XSTREAM2.toXML(entry, writer);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Entry read(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)) {
+            return (Entry) Jenkins.XSTREAM2.fromXML(reader);
+        } catch (RuntimeException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to delete queued WhiteSource update {0}", file);
+        }
+    }
+
+    private synchronized ExecutorService getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = Executors.newFixedThreadPool(DISPATCH_THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WhiteSource deferred upload " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return dispatcher;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Queued update request.
+     */
+    public static class Entry {
+
+        private final String jobName;
+        private final int buildNumber;
+        private final boolean pipeline;
+        private final Secret orgToken;
+        private final Secret userKey;
+        private final String product;
+        private final String productVersion;
+        private final String requesterEmail;
+        private final List<AgentProjectInfo> projects;
+        private int attempts;
+
+        public Entry(Run<?, ?> run, boolean pipeline, Secret orgToken, Secret userKey, String product,
+                     String productVersion, String requesterEmail, Collection<AgentProjectInfo> projects) {
+            this.jobName = run.getParent().getFullName();
+            this.buildNumber = run.getNumber();
+            this.pipeline = pipeline;
+            this.orgToken = orgToken;
+            this.userKey = userKey;
+            this.product = product;
+            this.productVersion = productVersion;
+            this.requesterEmail = requesterEmail;
+            this.projects = new ArrayList<>(projects);
+        }
+    }
+
+    /**
+     * Sends the requests left in the queue, after a restart or while the service was unavailable.
+     */
+    @Extension
+    public static class Dispatcher extends AsyncPeriodicWork {
+
+        public Dispatcher() {
+            super("WhiteSource deferred upload");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        public long getInitialDelay() {
+            return TimeUnit.SECONDS.toMillis(30);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            get().flush();
+        }
+    }
+}
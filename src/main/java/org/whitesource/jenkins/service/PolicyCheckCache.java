@@ -0,0 +1,164 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Controller wide cache of policy check results.
+ * <p>
+ * Results are keyed by organization, product, the check all libraries flag and a fingerprint of the projects
+ * and their dependencies, so builds with an unchanged dependency set reuse the result of an earlier check
+ * until it expires. Saving the global configuration clears the cache, as does the WhiteSource management page.
+ * <p>
+ * The policies defined in WhiteSource are not part of the key: the server has no policy version to key on,
+ * so builds reusing a result don't see policy changes until it expires or the cache is cleared.
+ */
+public final class PolicyCheckCache {
+
+    /* --- Static members --- */
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static final char SEPARATOR = '\n';
+
+    private static final PolicyCheckCache INSTANCE = new PolicyCheckCache();
+
+    /* --- Members --- */
+
+    private final Map<String, CachedResult> results = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /* --- Constructors --- */
+
+    private PolicyCheckCache() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static PolicyCheckCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Key of a policy check, only digests of the tokens are kept.
+     */
+    public static String key(String orgToken, String product, String productVersion, boolean checkAllLibraries,
+                             Collection<AgentProjectInfo> projectInfos) {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        update(digest, orgToken);
+        update(digest, product);
+        update(digest, productVersion);
+        update(digest, Boolean.toString(checkAllLibraries));
+
+        // projects and dependencies in a canonical order, independent of the scan order
+        List<String> projects = new ArrayList<>();
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            StringBuilder project = new StringBuilder();
+            Coordinates coordinates = projectInfo.getCoordinates();
+            project.append(projectInfo.getProjectToken()).append(SEPARATOR);
+            if (coordinates != null) {
+                project.append(coordinates.getGroupId()).append(':').append(coordinates.getArtifactId())
+                        .append(':').append(coordinates.getVersion());
+            }
+            project.append(SEPARATOR).append(fingerprint(projectInfo.getDependencies()));
+            projects.add(project.toString());
+        }
+        Collections.sort(projects);
+        for (String project : projects) {
+            update(digest, project);
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return The cached result, null if none or expired.
+     */
+    public synchronized CachedResult lookup(String key, long ttlMillis) {
+        CachedResult cached = results.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.checkedAt > ttlMillis) {
+            results.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    public synchronized void store(String key, CheckPolicyComplianceResult result) {
+        results.put(key, new CachedResult(result, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return Number of cached results, expired ones included until looked up.
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Drops all results, called when the global configuration changes or an administrator clears the cache.
+     */
+    public synchronized void invalidate() {
+        results.clear();
+    }
+
+    /* --- Private methods --- */
+
+    private static String fingerprint(Collection<DependencyInfo> dependencies) {
+        if (dependencies == null || dependencies.isEmpty()) {
+            return "";
+        }
+        List<String> entries = new ArrayList<>(dependencies.size());
+        for (DependencyInfo dependency : dependencies) {
+            entries.add(dependency.getGroupId() + ':' + dependency.getArtifactId() + ':' + dependency.getVersion() + ':' +
+                    dependency.getSha1() + ':' + dependency.getScope() + '[' + fingerprint(dependency.getChildren()) + ']');
+        }
+        Collections.sort(entries);
+        return DigestUtils.sha1Hex(String.valueOf(entries));
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) SEPARATOR);
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Policy check result and the time it was received.
+     */
+    public static final class CachedResult {
+
+        private final CheckPolicyComplianceResult result;
+        private final long checkedAt;
+
+        private CachedResult(CheckPolicyComplianceResult result, long checkedAt) {
+            this.result = result;
+            this.checkedAt = checkedAt;
+        }
+
+        public CheckPolicyComplianceResult getResult() {
+            return result;
+        }
+
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+    }
+}
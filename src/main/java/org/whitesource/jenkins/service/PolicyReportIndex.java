@@ -0,0 +1,190 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.RequestPolicyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+
+import java.util.*;
+
+/**
+ * Flat list of the libraries of a policy check result, queried one page at a time.
+ * <p>
+ * The libraries matching the last query are kept, so paging through them doesn't filter and sort again.
+ */
+public final class PolicyReportIndex {
+
+    /* --- Static members --- */
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    public static final String NO_POLICY = "None";
+
+    private static final Map<String, Comparator<Library>> SORTS = new HashMap<>();
+
+    static {
+        SORTS.put("project", new Comparator<Library>() {
+            public int compare(Library l1, Library l2) {
+                return compareText(l1.project, l2.project);
+            }
+        });
+        SORTS.put("library", new Comparator<Library>() {
+            public int compare(Library l1, Library l2) {
+                return compareText(l1.library, l2.library);
+            }
+        });
+        SORTS.put("policy", new Comparator<Library>() {
+            public int compare(Library l1, Library l2) {
+                return compareText(l1.policy, l2.policy);
+            }
+        });
+        SORTS.put("action", new Comparator<Library>() {
+            public int compare(Library l1, Library l2) {
+                return compareText(l1.action, l2.action);
+            }
+        });
+    }
+
+    /* --- Members --- */
+
+    private final List<Library> libraries;
+
+    private String lastQuery;
+    private List<Library> lastMatches;
+
+    /* --- Constructors --- */
+
+    private PolicyReportIndex(List<Library> libraries) {
+        this.libraries = libraries;
+    }
+
+    /* --- Static methods --- */
+
+    public static PolicyReportIndex of(CheckPolicyComplianceResult result) {
+        List<Library> libraries = new ArrayList<>();
+        for (Map<String, PolicyCheckResourceNode> projects : Arrays.asList(result.getExistingProjects(), result.getNewProjects())) {
+            if (projects != null) {
+                for (Map.Entry<String, PolicyCheckResourceNode> project : projects.entrySet()) {
+                    collect(project.getKey(), project.getValue().getChildren(), libraries);
+                }
+            }
+        }
+        return new PolicyReportIndex(libraries);
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param filter     Text the project, library or policy name contain, ignoring case.
+     * @param action     Policy action of the libraries, {@link #NO_POLICY} for libraries without policy, blank for all.
+     * @param sort       Column to sort by, the library name if not known.
+     * @param descending Reverse order.
+     * @param page       Page index, starting at 0.
+     * @param size       Libraries per page, up to {@link #MAX_PAGE_SIZE}.
+     */
+    public synchronized Page query(String filter, String action, String sort, boolean descending, int page, int size) {
+        String text = StringUtils.defaultString(filter).trim().toLowerCase(Locale.ENGLISH);
+        String actionType = StringUtils.defaultString(action).trim();
+        Comparator<Library> comparator = SORTS.containsKey(sort) ? SORTS.get(sort) : SORTS.get("library");
+        String query = text + '\n' + actionType + '\n' + sort + '\n' + descending;
+
+        if (!query.equals(lastQuery)) {
+            List<Library> matches = new ArrayList<>();
+            for (Library library : libraries) {
+                if (library.matches(text, actionType)) {
+                    matches.add(library);
+                }
+            }
+            Collections.sort(matches, descending ? Collections.reverseOrder(comparator) : comparator);
+            lastQuery = query;
+            lastMatches = matches;
+        }
+
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int from = (int) Math.min((long) Math.max(page, 0) * pageSize, lastMatches.size());
+        int to = Math.min(from + pageSize, lastMatches.size());
+        return new Page(libraries.size(), lastMatches.size(), Math.max(page, 0), pageSize,
+                new ArrayList<>(lastMatches.subList(from, to)));
+    }
+
+    public int size() {
+        return libraries.size();
+    }
+
+    /* --- Private methods --- */
+
+    private static void collect(String project, Collection<PolicyCheckResourceNode> nodes, List<Library> libraries) {
+        if (nodes == null) {
+            return;
+        }
+        for (PolicyCheckResourceNode node : nodes) {
+            ResourceInfo resource = node.getResource();
+            RequestPolicyInfo policy = node.getPolicy();
+            libraries.add(new Library(project,
+                    resource == null ? null : resource.getDisplayName(),
+                    resource == null ? null : resource.getSha1(),
+                    policy == null ? null : policy.getDisplayName(),
+                    policy == null ? NO_POLICY : policy.getActionType()));
+            collect(project, node.getChildren(), libraries);
+        }
+    }
+
+    private static int compareText(String s1, String s2) {
+        return String.CASE_INSENSITIVE_ORDER.compare(StringUtils.defaultString(s1), StringUtils.defaultString(s2));
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A library and the policy applied to it, serialized as is.
+     */
+    public static final class Library {
+
+        private final String project;
+        private final String library;
+        private final String sha1;
+        private final String policy;
+        private final String action;
+
+        /**
+         * Lower case names the filter looks in.
+         */
+        private final transient String searchText;
+
+        private Library(String project, String library, String sha1, String policy, String action) {
+            this.project = project;
+            this.library = library;
+            this.sha1 = sha1;
+            this.policy = policy;
+            this.action = action;
+            this.searchText = (StringUtils.defaultString(project) + '\n' + StringUtils.defaultString(library) + '\n' +
+                    StringUtils.defaultString(policy)).toLowerCase(Locale.ENGLISH);
+        }
+
+        private boolean matches(String text, String actionType) {
+            return (text.isEmpty() || searchText.contains(text)) &&
+                    (actionType.isEmpty() || actionType.equalsIgnoreCase(action));
+        }
+    }
+
+    /**
+     * A page of the libraries matching a query, serialized as is.
+     */
+    public static final class Page {
+
+        private final int total;
+        private final int matches;
+        private final int page;
+        private final int size;
+        private final List<Library> libraries;
+
+        private Page(int total, int matches, int page, int size, List<Library> libraries) {
+            this.total = total;
+            this.matches = matches;
+            this.page = page;
+            this.size = size;
+            this.libraries = libraries;
+        }
+    }
+}
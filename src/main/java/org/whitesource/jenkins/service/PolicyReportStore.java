@@ -0,0 +1,419 @@
+package org.whitesource.jenkins.service;
+
+import com.google.gson.Gson;
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.report.PolicyCheckReport;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Policy check results of builds, rendered to HTML reports only when opened.
+ * <p>
+ * Builds keep the compressed policy check result only. Opening the report of a build renders it into
+ * <code>$JENKINS_HOME/whitesource/reports</code>, where the {@link #MAX_RENDERED} most recently opened reports are kept.
+ * <p>
+ * Rendered files are kept gzip compressed only, to be served as is to clients accepting it.
+ * Static assets, the same for all reports, are stored once under their content hash and linked from each report.
+ * <p>
+ * Reports of different builds render concurrently, only renders of the same build wait for each other.
+ * Storing a result never waits for a render: a render overlapping the eviction of its build renders again.
+ * Folders trimmed or evicted while a request serves them are deleted once the last such request is done.
+ */
+public final class PolicyReportStore {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(PolicyReportStore.class.getName());
+
+    public static final int MAX_RENDERED = 32;
+
+    public static final int MAX_INDEXED = 8;
+
+    public static final String RESULT_FILE = "whitesource-policy-check.json.gz";
+
+    private static final String REPORTS_FOLDER = "whitesource" + File.separator + "reports";
+
+    /**
+     * Folder {@link PolicyCheckReport} writes the report to.
+     */
+    private static final String REPORT_FOLDER = "whitesource";
+
+    private static final String ASSETS_FOLDER = "assets";
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static final PolicyReportStore INSTANCE = new PolicyReportStore();
+
+    /* --- Members --- */
+
+    private final Gson gson = new Gson();
+
+    /**
+     * Guarded by itself, never held while rendering or deleting files.
+     */
+    private final Map<String, File> rendered = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Requests serving each folder, guarded by {@link #rendered}.
+     */
+    private final Map<File, Integer> served = new HashMap<>();
+
+    /**
+     * Folders no longer rendered, deleted once not served, guarded by {@link #rendered}.
+     */
+    private final Set<File> retired = new HashSet<>();
+
+    /**
+     * Evictions of the builds of each lock stripe, guarded by {@link #rendered}.
+     */
+    private final long[] evictions = new long[LOCK_STRIPES];
+
+    private final Object[] renderLocks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong renders = new AtomicLong();
+
+    private final Map<String, PolicyReportIndex> indexes = new LinkedHashMap<String, PolicyReportIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PolicyReportIndex> eldest) {
+            return size() > MAX_INDEXED;
+        }
+    };
+
+    private boolean cleaned;
+
+    /* --- Constructors --- */
+
+    private PolicyReportStore() {
+        // singleton
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            renderLocks[i] = new Object();
+        }
+    }
+
+    /* --- Static methods --- */
+
+    public static PolicyReportStore get() {
+        return INSTANCE;
+    }
+
+    public static File getResultFile(Run<?, ?> run) {
+        return new File(run.getRootDir(), RESULT_FILE);
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Saves the policy check result of the build.
+     */
+    public void store(Run<?, ?> run, CheckPolicyComplianceResult result) throws IOException {
+        File file = getResultFile(run);
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)), StandardCharsets.UTF_8)) {
+            gson.toJson(result, writer);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // a report rendered from an earlier result of the same build is stale
+        evict(key(run));
+    }
+
+    public CheckPolicyComplianceResult load(Run<?, ?> run) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(getResultFile(run))), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, CheckPolicyComplianceResult.class);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to read the policy check result of " + run, e);
+        }
+    }
+
+    /**
+     * @return The HTML report of the build, rendered if not already. Its files are kept until it is released.
+     */
+    public Report render(Run<?, ?> run) throws IOException {
+        String key = key(run);
+        int stripe = stripe(key);
+        synchronized (renderLocks[stripe]) {
+            while (true) {
+                long evicted;
+                synchronized (rendered) {
+                    File folder = rendered.get(key);
+                    if (folder != null && folder.isDirectory()) {
+                        return serve(folder);
+                    }
+                    evicted = evictions[stripe];
+                }
+
+                File folder = renderFolder(run, key);
+                List<File> trimmed;
+                Report report = null;
+                synchronized (rendered) {
+                    if (evictions[stripe] != evicted) {
+                        // the result was stored again while rendering, the report may be stale
+                        trimmed = Collections.singletonList(folder);
+                    } else {
+                        rendered.put(key, folder);
+                        report = serve(folder);
+                        trimmed = retire(trim());
+                    }
+                }
+                for (File stale : trimmed) {
+                    delete(stale);
+                }
+                if (report != null) {
+                    return report;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The index of the libraries of the build, the {@link #MAX_INDEXED} most recently queried are kept.
+     */
+    public PolicyReportIndex index(Run<?, ?> run) throws IOException {
+        String key = key(run);
+        synchronized (indexes) {
+            PolicyReportIndex index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+        }
+        // loaded outside the lock, concurrent first queries of the same build may both load it
+        PolicyReportIndex index = PolicyReportIndex.of(load(run));
+        synchronized (indexes) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Renders the report of the build into a folder of its own.
+     */
+    private File renderFolder(Run<?, ?> run, String key) throws IOException {
+        File reports = getReportsFolder();
+        synchronized (this) {
+            if (!cleaned) {
+                // reports rendered before a restart are not indexed
+                Util.deleteRecursive(reports);
+                cleaned = true;
+            }
+        }
+        // a folder per render, so a stale render never overwrites a served one
+        File folder = new File(reports, key + "-" + renders.incrementAndGet());
+        Util.deleteRecursive(folder);
+        if (!folder.mkdirs()) {
+            throw new IOException("Failed to create folder " + folder);
+        }
+        try {
+            new PolicyCheckReport(load(run), run.getParent().getName(), Integer.toString(run.getNumber())).generate(folder, false);
+            compress(new File(folder, REPORT_FOLDER), new File(reports, ASSETS_FOLDER));
+        } catch (IOException | RuntimeException e) {
+            Util.deleteRecursive(folder);
+            throw e;
+        } catch (Exception e) {
+            Util.deleteRecursive(folder);
+            throw new IOException("Failed to render the policy check report of " + run, e);
+        }
+        return folder;
+    }
+
+    /**
+     * Replaces the files of the report with their gzip compressed form.
+     */
+    private static void compress(File folder, File assets) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list folder " + folder);
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                compress(file, assets);
+                continue;
+            }
+            File compressed = new File(file.getPath() + GZIP_SUFFIX);
+            if (file.getName().endsWith(".html")) {
+                gzip(file, compressed);
+            } else {
+                share(file, compressed, assets);
+            }
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * Links a static asset of the report to its single compressed copy.
+     */
+    private static void share(File file, File compressed, File assets) throws IOException {
+        String hash;
+        try (InputStream in = new FileInputStream(file)) {
+            hash = DigestUtils.sha1Hex(in);
+        }
+        File shared = new File(assets, hash + GZIP_SUFFIX);
+        if (!shared.isFile()) {
+            if (!assets.isDirectory() && !assets.mkdirs()) {
+                throw new IOException("Failed to create folder " + assets);
+            }
+            // renders of other builds may share the same asset at the same time
+            File temp = Files.createTempFile(assets.toPath(), hash, ".tmp").toFile();
+            gzip(file, temp);
+            Files.move(temp.toPath(), shared.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        try {
+            Files.createLink(compressed.toPath(), shared.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // file system without hard links
+            Files.copy(shared.toPath(), compressed.toPath());
+        }
+    }
+
+    private static void gzip(File file, File compressed) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed))) {
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    /**
+     * @return The folders of the least recently opened reports over {@link #MAX_RENDERED}, to delete.
+     */
+    private List<File> trim() {
+        List<File> trimmed = new ArrayList<>();
+        Iterator<Map.Entry<String, File>> it = rendered.entrySet().iterator();
+        while (rendered.size() > MAX_RENDERED && it.hasNext()) {
+            trimmed.add(it.next().getValue());
+            it.remove();
+        }
+        return trimmed;
+    }
+
+    /**
+     * @return The given folders not being served, to delete now. The others are deleted once released.
+     */
+    private List<File> retire(List<File> folders) {
+        List<File> unused = new ArrayList<>();
+        for (File folder : folders) {
+            if (served.containsKey(folder)) {
+                retired.add(folder);
+            } else {
+                unused.add(folder);
+            }
+        }
+        return unused;
+    }
+
+    /**
+     * Marks the folder in use until the returned report is released, called with {@link #rendered} held.
+     */
+    private Report serve(File folder) {
+        Integer count = served.get(folder);
+        served.put(folder, count == null ? 1 : count + 1);
+        return new Report(folder);
+    }
+
+    private void release(File folder) {
+        boolean unused;
+        synchronized (rendered) {
+            Integer count = served.get(folder);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                served.put(folder, count - 1);
+                return;
+            }
+            served.remove(folder);
+            unused = retired.remove(folder);
+        }
+        if (unused) {
+            delete(folder);
+        }
+    }
+
+    private void evict(String key) {
+        synchronized (indexes) {
+            indexes.remove(key);
+        }
+        List<File> unused = Collections.emptyList();
+        synchronized (rendered) {
+            File folder = rendered.remove(key);
+            evictions[stripe(key)]++;
+            if (folder != null) {
+                unused = retire(Collections.singletonList(folder));
+            }
+        }
+        for (File folder : unused) {
+            delete(folder);
+        }
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES;
+    }
+
+    private static void delete(File folder) {
+        try {
+            Util.deleteRecursive(folder);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to delete rendered policy check report " + folder, e);
+        }
+    }
+
+    private static String key(Run<?, ?> run) {
+        return Util.getDigestOf(run.getParent().getFullName()) + "-" + run.getNumber();
+    }
+
+    private static File getReportsFolder() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        return new File(jenkins.getRootDir(), REPORTS_FOLDER);
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Rendered report being served, its files are not deleted before it is released.
+     */
+    public final class Report {
+
+        private final File folder;
+        private boolean released;
+
+        private Report(File folder) {
+            this.folder = folder;
+        }
+
+        /**
+         * @param path Path of the file relative to the report folder.
+         * @return The gzip compressed file, null if the report has no such file.
+         */
+        public File getCompressedFile(String path) {
+            File file = new File(new File(folder, REPORT_FOLDER), path + GZIP_SUFFIX);
+            return file.isFile() ? file : null;
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            PolicyReportStore.this.release(folder);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.ResourceInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Controller wide snapshot of the libraries rejected by the policies of each organization and product,
+ * learned from the policy check results of the WhiteSource server.
+ * <p>
+ * Policies may be scoped to a project, so the rejections are kept per project, identified by its token or
+ * its group and artifact ids, and a rejection learned for one project never decides for another.
+ * A policy check of a project including a library known to be rejected for it is conclusive without the server.
+ * Any other check goes to the server, whose result refreshes the snapshot: libraries it no longer rejects are dropped.
+ * Snapshots are dropped entirely once older than the refresh interval, so policy changes on the server
+ * are picked up within it. Saving the global configuration clears all snapshots.
+ */
+public final class PolicySnapshot {
+
+    /* --- Static members --- */
+
+    private static final String REJECT = "Reject";
+
+    private static final int MAX_SNAPSHOTS = 64;
+
+    private static final PolicySnapshot INSTANCE = new PolicySnapshot();
+
+    /* --- Members --- */
+
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > MAX_SNAPSHOTS;
+        }
+    };
+
+    /* --- Constructors --- */
+
+    private PolicySnapshot() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static PolicySnapshot get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Key of the policies of an organization and product, only a digest of the token is kept.
+     */
+    public static String key(String orgToken, String product) {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        digest.update(String.valueOf(orgToken).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(String.valueOf(product).getBytes(StandardCharsets.UTF_8));
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Evaluates the policies of the projects against the snapshot.
+     *
+     * @return A result with the known rejected libraries of each project, null if not conclusive.
+     */
+    public CheckPolicyComplianceResult evaluate(String key, Collection<AgentProjectInfo> projectInfos, long maxAgeMillis) {
+        Map<String, Map<String, PolicyCheckResourceNode>> rejected = new HashMap<>();
+        String organization;
+        synchronized (this) {
+            Snapshot snapshot = snapshots.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - snapshot.refreshedAt > maxAgeMillis) {
+                snapshots.remove(key);
+                return null;
+            }
+            for (AgentProjectInfo projectInfo : projectInfos) {
+                String project = projectId(projectInfo);
+                Map<String, PolicyCheckResourceNode> projectRejected = project == null ? null : snapshot.rejected.get(project);
+                if (projectRejected != null && !projectRejected.isEmpty()) {
+                    rejected.put(project, new HashMap<>(projectRejected));
+                }
+            }
+            organization = snapshot.organization;
+        }
+        if (rejected.isEmpty()) {
+            return null;
+        }
+
+        Map<String, PolicyCheckResourceNode> projects = new LinkedHashMap<>();
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            Map<String, PolicyCheckResourceNode> projectRejected = rejected.get(projectId(projectInfo));
+            if (projectRejected == null) {
+                continue;
+            }
+            List<PolicyCheckResourceNode> libraries = new ArrayList<>();
+            collectRejected(projectInfo.getDependencies(), projectRejected, libraries, new HashSet<String>());
+            if (!libraries.isEmpty()) {
+                ResourceInfo project = new ResourceInfo();
+                project.setDisplayName(projectName(projectInfo));
+                PolicyCheckResourceNode root = new PolicyCheckResourceNode(project, null);
+                root.getChildren().addAll(libraries);
+                projects.put(projectName(projectInfo), root);
+            }
+        }
+        if (projects.isEmpty()) {
+            return null;
+        }
+        CheckPolicyComplianceResult result = new CheckPolicyComplianceResult();
+        result.setOrganization(organization);
+        result.setExistingProjects(projects);
+        result.setNewProjects(new HashMap<String, PolicyCheckResourceNode>());
+        return result;
+    }
+
+    /**
+     * Refreshes the snapshot with a policy check result of the server for the given projects.
+     * <p>
+     * Projects of the result that can't be matched to a project of the request are not recorded.
+     */
+    public void record(String key, Collection<AgentProjectInfo> projectInfos, CheckPolicyComplianceResult result) {
+        Map<String, Map<String, PolicyCheckResourceNode>> rejected = new HashMap<>();
+        Map<String, Set<String>> accepted = new HashMap<>();
+        for (Map<String, PolicyCheckResourceNode> projects : Arrays.asList(result.getExistingProjects(), result.getNewProjects())) {
+            if (projects == null) {
+                continue;
+            }
+            for (Map.Entry<String, PolicyCheckResourceNode> project : projects.entrySet()) {
+                String id = matchProject(project.getKey(), projectInfos);
+                if (id == null) {
+                    continue;
+                }
+                if (!rejected.containsKey(id)) {
+                    rejected.put(id, new HashMap<String, PolicyCheckResourceNode>());
+                    accepted.put(id, new HashSet<String>());
+                }
+                collectDecisions(project.getValue().getChildren(), rejected.get(id), accepted.get(id));
+            }
+        }
+
+        synchronized (this) {
+            Snapshot snapshot = snapshots.get(key);
+            if (snapshot == null) {
+                snapshot = new Snapshot(System.currentTimeMillis());
+                snapshots.put(key, snapshot);
+            }
+            snapshot.organization = result.getOrganization();
+            for (Map.Entry<String, Map<String, PolicyCheckResourceNode>> project : rejected.entrySet()) {
+                Map<String, PolicyCheckResourceNode> projectRejected = snapshot.rejected.get(project.getKey());
+                if (projectRejected == null) {
+                    projectRejected = new HashMap<>();
+                    snapshot.rejected.put(project.getKey(), projectRejected);
+                }
+                projectRejected.keySet().removeAll(accepted.get(project.getKey()));
+                projectRejected.putAll(project.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops all snapshots, called when the global configuration changes.
+     */
+    public synchronized void invalidate() {
+        snapshots.clear();
+    }
+
+    /* --- Private methods --- */
+
+    private static void collectRejected(Collection<DependencyInfo> dependencies, Map<String, PolicyCheckResourceNode> rejected,
+                                        List<PolicyCheckResourceNode> libraries, Set<String> seen) {
+        if (dependencies == null) {
+            return;
+        }
+        for (DependencyInfo dependency : dependencies) {
+            String sha1 = dependency.getSha1();
+            if (sha1 != null && rejected.containsKey(sha1) && seen.add(sha1)) {
+                libraries.add(rejected.get(sha1));
+            }
+            collectRejected(dependency.getChildren(), rejected, libraries, seen);
+        }
+    }
+
+    private static void collectDecisions(Collection<PolicyCheckResourceNode> nodes, Map<String, PolicyCheckResourceNode> rejected,
+                                         Set<String> accepted) {
+        if (nodes == null) {
+            return;
+        }
+        for (PolicyCheckResourceNode node : nodes) {
+            ResourceInfo resource = node.getResource();
+            String sha1 = resource == null ? null : resource.getSha1();
+            if (StringUtils.isNotBlank(sha1)) {
+                if (node.getPolicy() != null && REJECT.equals(node.getPolicy().getActionType())) {
+                    // the library alone, its own dependencies are decided separately
+                    rejected.put(sha1, new PolicyCheckResourceNode(resource, node.getPolicy()));
+                } else {
+                    accepted.add(sha1);
+                }
+            }
+            collectDecisions(node.getChildren(), rejected, accepted);
+        }
+    }
+
+    /**
+     * @return The token or the group and artifact ids of the project, null if it has neither.
+     */
+    private static String projectId(AgentProjectInfo projectInfo) {
+        if (StringUtils.isNotBlank(projectInfo.getProjectToken())) {
+            return "token:" + projectInfo.getProjectToken();
+        }
+        Coordinates coordinates = projectInfo.getCoordinates();
+        if (coordinates != null && StringUtils.isNotBlank(coordinates.getArtifactId())) {
+            return "coordinates:" + coordinates.getGroupId() + ':' + coordinates.getArtifactId();
+        }
+        return null;
+    }
+
+    /**
+     * @return The id of the project of the request a project of the result is about, null if not known.
+     */
+    private static String matchProject(String resultProject, Collection<AgentProjectInfo> projectInfos) {
+        if (projectInfos.size() == 1) {
+            return projectId(projectInfos.iterator().next());
+        }
+        String match = null;
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            if (projectName(projectInfo).equals(resultProject)) {
+                if (match != null) {
+                    // several projects of the same name, can't tell them apart
+                    return null;
+                }
+                match = projectId(projectInfo);
+            }
+        }
+        return match;
+    }
+
+    private static String projectName(AgentProjectInfo projectInfo) {
+        Coordinates coordinates = projectInfo.getCoordinates();
+        if (coordinates != null && StringUtils.isNotBlank(coordinates.getArtifactId())) {
+            return coordinates.getArtifactId();
+        }
+        return "Project";
+    }
+
+    /* --- Nested classes --- */
+
+    private static final class Snapshot {
+
+        private final long refreshedAt;
+        /**
+         * Rejected libraries of each project by SHA-1.
+         */
+        private final Map<String, Map<String, PolicyCheckResourceNode>> rejected = new HashMap<>();
+        private String organization;
+
+        private Snapshot(long refreshedAt) {
+            this.refreshedAt = refreshedAt;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.whitesource.jenkins.service;
+
+import hudson.Util;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller wide limit of the requests sent to WhiteSource, shared by all builds.
+ * <p>
+ * Requests wait for both a free in-flight slot and a token of the per second budget.
+ * Waiting requests are queued per organization and organizations take turns,
+ * so a burst of builds of one organization doesn't hold up the builds of the others.
+ */
+public final class RequestLimiter {
+
+    /* --- Static members --- */
+
+    private static final RequestLimiter INSTANCE = new RequestLimiter();
+
+    /**
+     * Weight of the latest wait in the average wait time.
+     */
+    private static final double WAIT_SMOOTHING = 0.2;
+
+    /* --- Members --- */
+
+    private int maxInFlight;
+    private int requestsPerSecond;
+
+    private int inFlight;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Waiting requests per organization, organizations in turn order.
+     */
+    private final LinkedHashMap<String, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private int queued;
+
+    private long granted;
+    private double averageWaitMillis;
+    private long maxWaitMillis;
+
+    /* --- Constructors --- */
+
+    private RequestLimiter() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static RequestLimiter get() {
+        return INSTANCE;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Applies the configured limits, 0 meaning no limit.
+     * Only called when the global configuration is loaded or saved, not per request.
+     */
+    public synchronized void configure(int maxInFlight, int requestsPerSecond) {
+        if (this.requestsPerSecond != requestsPerSecond) {
+            // start with a full budget when the limit is introduced
+            tokens = this.requestsPerSecond == 0 ? requestsPerSecond : Math.min(tokens, requestsPerSecond);
+        }
+        this.maxInFlight = Math.max(0, maxInFlight);
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+        grant();
+        notifyAll();
+    }
+
+    /**
+     * Waits for the turn of a request of the given organization.
+     *
+     * @param orgToken Organization of the request, only a digest of it is kept.
+     * @return Permit to release once the request is done.
+     */
+    public Permit acquire(String orgToken) throws InterruptedException {
+        return acquire(orgToken, Deadline.NONE);
+    }
+
+    /**
+     * Waits for the turn of a request of the given organization, until the deadline.
+     *
+     * @param orgToken Organization of the request, only a digest of it is kept.
+     * @return Permit to release once the request is done, null if the deadline passed first.
+     */
+    public Permit acquire(String orgToken, Deadline deadline) throws InterruptedException {
+        String organization = Util.getDigestOf(orgToken == null ? "" : orgToken);
+        Waiter waiter = new Waiter();
+        synchronized (this) {
+            Deque<Waiter> queue = queues.get(organization);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(organization, queue);
+            }
+            queue.addLast(waiter);
+            queued++;
+            grant();
+            try {
+                while (!waiter.granted) {
+                    if (deadline.isExpired()) {
+                        dequeue(organization, waiter);
+                        return null;
+                    }
+                    long refillIn = nextTokenIn();
+                    long waitFor = Math.min(refillIn > 0 ? refillIn : Long.MAX_VALUE, deadline.remaining(TimeUnit.NANOSECONDS));
+                    if (waitFor < Long.MAX_VALUE) {
+                        TimeUnit.NANOSECONDS.timedWait(this, waitFor);
+                    } else {
+                        wait();
+                    }
+                    grant();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // the slot was handed over while interrupted, give it back
+                    release();
+                } else {
+                    dequeue(organization, waiter);
+                }
+                throw e;
+            }
+            recordWait(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiter.since));
+        }
+        return new Permit();
+    }
+
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getGranted() {
+        return granted;
+    }
+
+    public synchronized long getAverageWaitMillis() {
+        return Math.round(averageWaitMillis);
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public synchronized boolean isLimited() {
+        return maxInFlight > 0 || requestsPerSecond > 0;
+    }
+
+    /* --- Private methods --- */
+
+    private synchronized void release() {
+        inFlight--;
+        grant();
+        notifyAll();
+    }
+
+    private void dequeue(String organization, Waiter waiter) {
+        Deque<Waiter> waiting = queues.get(organization);
+        if (waiting != null && waiting.remove(waiter)) {
+            queued--;
+            if (waiting.isEmpty()) {
+                queues.remove(organization);
+            }
+        }
+    }
+
+    /**
+     * Hands free slots to the waiting requests, one organization after the other.
+     */
+    private void grant() {
+        refill();
+        boolean any = false;
+        while (queued > 0 && (maxInFlight <= 0 || inFlight < maxInFlight) && (requestsPerSecond <= 0 || tokens >= 1)) {
+            Iterator<Map.Entry<String, Deque<Waiter>>> it = queues.entrySet().iterator();
+            Map.Entry<String, Deque<Waiter>> next = it.next();
+            Deque<Waiter> queue = next.getValue();
+            Waiter waiter = queue.pollFirst();
+            // the organization goes to the back of the line
+            it.remove();
+            if (!queue.isEmpty()) {
+                queues.put(next.getKey(), queue);
+            }
+            queued--;
+            inFlight++;
+            if (requestsPerSecond > 0) {
+                tokens--;
+            }
+            waiter.granted = true;
+            any = true;
+        }
+        if (any) {
+            notifyAll();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (requestsPerSecond > 0) {
+            tokens = Math.min(requestsPerSecond, tokens + (now - lastRefill) * requestsPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * @return Nanoseconds until the next token of the per second budget, 0 if not waiting for one.
+     */
+    private long nextTokenIn() {
+        if (requestsPerSecond <= 0 || tokens >= 1) {
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+    }
+
+    private void recordWait(long waitMillis) {
+        granted++;
+        averageWaitMillis = granted == 1 ? waitMillis : averageWaitMillis + WAIT_SMOOTHING * (waitMillis - averageWaitMillis);
+        maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+    }
+
+    /* --- Nested classes --- */
+
+    private static final class Waiter {
+
+        private final long since = System.nanoTime();
+        private boolean granted;
+    }
+
+    /**
+     * Slot of a request in flight.
+     */
+    public final class Permit {
+
+        private boolean released;
+
+        private Permit() {
+        }
+
+        public void release() {
+            synchronized (RequestLimiter.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            RequestLimiter.this.release();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.jenkins.Constants;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends requests to WhiteSource within the controller wide guards, and decides how failed requests are retried.
+ * <p>
+ * A request first waits for its turn in the {@link RequestLimiter}, then asks the {@link CircuitBreaker}, so a probe
+ * of a half open circuit is only let through once it can be sent. The breaker is told about requests that reached
+ * the server or failed to, never about requests that were not sent.
+ */
+public final class RequestRetry {
+
+    /* --- Static members --- */
+
+    /**
+     * Upper bound of the exponential retry backoff, in seconds.
+     */
+    private static final int MAX_RETRY_INTERVAL = 300;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * How a request ended, as told to the circuit breaker.
+     */
+    public enum Outcome {
+        /**
+         * The server answered, even with an error.
+         */
+        ANSWERED,
+        /**
+         * The request failed to reach the server or the server is overloaded.
+         */
+        UNREACHABLE,
+        /**
+         * The request was not sent, or failed for a reason that says nothing about the server.
+         */
+        NOT_SENT
+    }
+
+    /* --- Constructors --- */
+
+    private RequestRetry() {
+        // utility class
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @param operation Name of the request in the {@link RequestStats}.
+     * @return The guard of one request to the given service, in the limits of the controller.
+     */
+    public static Guard guard(String serviceUrl, String orgToken, String operation) {
+        return new LocalGuard(serviceUrl, orgToken, operation);
+    }
+
+    /**
+     * Sends a request once its guard lets it through, and reports how it ended.
+     *
+     * @throws NotSentException If the request was not sent, the deadline passed first or the circuit is open.
+     */
+    public static <T> T send(Guard guard, Deadline deadline, Request<T> request)
+            throws WssServiceException, InterruptedException {
+        if (deadline.isExpired()) {
+            throw new NotSentException("Deadline exceeded before sending the request");
+        }
+        String refusal = guard.acquire(deadline.remaining(TimeUnit.MILLISECONDS));
+        if (refusal != null) {
+            throw new NotSentException(refusal);
+        }
+        Outcome outcome = Outcome.NOT_SENT;
+        Deadline previous = deadline.enter();
+        try {
+            T result = request.send();
+            outcome = Outcome.ANSWERED;
+            return result;
+        } catch (WssServiceException e) {
+            outcome = outcome(e);
+            throw e;
+        } finally {
+            Deadline.exit(previous);
+            guard.release(outcome);
+        }
+    }
+
+    /**
+     * @return True if the request failed to reach the server or the server is overloaded, and may succeed later.
+     */
+    public static boolean isRetryable(WssServiceException e) {
+        if (e instanceof NotSentException) {
+            return false;
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof HttpResponseException) {
+            int status = ((HttpResponseException) cause).getStatusCode();
+            return status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || status == HTTP_TOO_MANY_REQUESTS;
+        }
+        return cause != null && cause.getClass().getPackage() != null &&
+                Constants.JAVA_NETWORKING.equals(cause.getClass().getPackage().getName());
+    }
+
+    /**
+     * Capped exponential backoff with equal jitter, so concurrent builds don't retry in lockstep.
+     *
+     * @param interval Configured retry interval, in seconds.
+     * @return Milliseconds to wait before the given retry, starting at 0.
+     */
+    public static long delay(int interval, int attempt) {
+        if (interval <= 0) {
+            return 0;
+        }
+        long cap = TimeUnit.SECONDS.toMillis(Math.max(interval, MAX_RETRY_INTERVAL));
+        long delay = Math.min(cap, TimeUnit.SECONDS.toMillis(interval) << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static String serviceUnavailableMessage(CircuitBreaker breaker) {
+        return "WhiteSource service is unavailable after " + breaker.getFailures() + " failed requests, retrying in " +
+                breaker.getRetryAfterSeconds() + " seconds";
+    }
+
+    /* --- Private methods --- */
+
+    private static Outcome outcome(WssServiceException e) {
+        if (isRetryable(e)) {
+            return Outcome.UNREACHABLE;
+        }
+        Throwable cause = e.getCause();
+        // an error result or status, the server is up
+        return cause == null || cause instanceof HttpResponseException ? Outcome.ANSWERED : Outcome.NOT_SENT;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A request to WhiteSource.
+     */
+    public interface Request<T> {
+
+        T send() throws WssServiceException;
+    }
+
+    /**
+     * Turn of one request in the limits of the controller and its circuit breaker.
+     * Agents sending requests themselves get a guard exported from the controller, so their requests count there too.
+     */
+    public interface Guard {
+
+        /**
+         * Waits for a turn to send the request, then asks the circuit breaker.
+         *
+         * @param timeoutMillis Longest wait, {@link Long#MAX_VALUE} for no limit.
+         * @return Null once the request may be sent, otherwise why it may not. No need to release a refused turn.
+         */
+        String acquire(long timeoutMillis) throws InterruptedException;
+
+        /**
+         * Gives the turn back and tells the circuit breaker and the request stats how the request ended.
+         */
+        void release(Outcome outcome);
+    }
+
+    /**
+     * Failure of a request that was never sent, not to be retried right away nor counted against the server.
+     */
+    public static class NotSentException extends WssServiceException {
+
+        private static final long serialVersionUID = -1545328407446436153L;
+
+        public NotSentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Guard of a request sent by the controller.
+     */
+    private static class LocalGuard implements Guard {
+
+        private final CircuitBreaker breaker;
+        private final String orgToken;
+        private final String operation;
+        private volatile RequestLimiter.Permit permit;
+        private volatile long startedAt;
+
+        private LocalGuard(String serviceUrl, String orgToken, String operation) {
+            this.breaker = CircuitBreaker.forUrl(serviceUrl);
+            this.orgToken = orgToken;
+            this.operation = operation;
+        }
+
+        public String acquire(long timeoutMillis) throws InterruptedException {
+            if (timeoutMillis <= 0) {
+                return "Deadline exceeded before sending the request";
+            }
+            // the limits are applied when the global configuration is saved
+            RequestLimiter.Permit acquired = RequestLimiter.get().acquire(orgToken, Deadline.in(timeoutMillis, TimeUnit.MILLISECONDS));
+            if (acquired == null) {
+                return "Timed out waiting for a turn to send the request";
+            }
+            // asked last, a probe of a half open circuit goes out right away
+            if (!breaker.tryAcquire()) {
+                acquired.release();
+                return serviceUnavailableMessage(breaker);
+            }
+            permit = acquired;
+            startedAt = System.nanoTime();
+            return null;
+        }
+
+        public void release(Outcome outcome) {
+            RequestStats.get().record(operation, startedAt, outcome == Outcome.ANSWERED);
+            switch (outcome) {
+                case ANSWERED:
+                    breaker.recordSuccess();
+                    break;
+                case UNREACHABLE:
+                    breaker.recordFailure();
+                    break;
+                default:
+                    breaker.releaseProbe();
+                    break;
+            }
+            if (permit != null) {
+                permit.release();
+                permit = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.whitesource.jenkins.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller wide statistics of the requests sent to WhiteSource, to measure how the plugin behaves under load.
+ * <p>
+ * Latency percentiles are computed over the last {@link #SAMPLES} requests of each operation,
+ * throughput over the last minute.
+ */
+public final class RequestStats {
+
+    /* --- Static members --- */
+
+    public static final String UPDATE = "Update";
+
+    public static final String POLICY_CHECK = "Policy check";
+
+    private static final int SAMPLES = 1024;
+
+    private static final long BYTES_PER_MB = 1024 * 1024;
+
+    private static final RequestStats INSTANCE = new RequestStats();
+
+    /* --- Members --- */
+
+    private final Map<String, Operation> operations = new TreeMap<>();
+
+    /* --- Constructors --- */
+
+    private RequestStats() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static RequestStats get() {
+        return INSTANCE;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Records a request sent to the server.
+     *
+     * @param startedAt {@link System#nanoTime()} when the request was sent.
+     */
+    public void record(String operation, long startedAt, boolean success) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            Operation stats = operations.get(operation);
+            if (stats == null) {
+                stats = new Operation(operation);
+                operations.put(operation, stats);
+            }
+            stats.record(now, now - startedAt, success);
+        }
+    }
+
+    /**
+     * @return The statistics of each operation sent so far.
+     */
+    public synchronized List<Operation> getOperations() {
+        List<Operation> copies = new ArrayList<>();
+        for (Operation operation : operations.values()) {
+            copies.add(operation.copy());
+        }
+        return copies;
+    }
+
+    public long getHeapUsedMb() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return heap.getUsed() / BYTES_PER_MB;
+    }
+
+    public long getHeapMaxMb() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return heap.getMax() < 0 ? heap.getCommitted() / BYTES_PER_MB : heap.getMax() / BYTES_PER_MB;
+    }
+
+    public int getThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Statistics of one kind of request.
+     */
+    public static final class Operation {
+
+        private final String name;
+        private final long[] latencies;
+        private final long[] times;
+        private int size;
+        private int next;
+        private long count;
+        private long failures;
+
+        private Operation(String name) {
+            this(name, new long[SAMPLES], new long[SAMPLES]);
+        }
+
+        private Operation(String name, long[] latencies, long[] times) {
+            this.name = name;
+            this.latencies = latencies;
+            this.times = times;
+        }
+
+        private void record(long now, long latency, boolean success) {
+            latencies[next] = latency;
+            times[next] = now;
+            next = (next + 1) % SAMPLES;
+            size = Math.min(size + 1, SAMPLES);
+            count++;
+            if (!success) {
+                failures++;
+            }
+        }
+
+        private Operation copy() {
+            Operation copy = new Operation(name, latencies.clone(), times.clone());
+            copy.size = size;
+            copy.next = next;
+            copy.count = count;
+            copy.failures = failures;
+            return copy;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getP50Millis() {
+            return percentileMillis(50);
+        }
+
+        public long getP99Millis() {
+            return percentileMillis(99);
+        }
+
+        /**
+         * @return Requests sent over the last minute, up to the number of samples kept.
+         */
+        public int getLastMinute() {
+            long since = System.nanoTime() - TimeUnit.MINUTES.toNanos(1);
+            int recent = 0;
+            for (int i = 0; i < size; i++) {
+                if (times[i] - since > 0) {
+                    recent++;
+                }
+            }
+            return recent;
+        }
+
+        private long percentileMillis(int percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+        }
+    }
+}
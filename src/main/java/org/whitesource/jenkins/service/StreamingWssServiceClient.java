@@ -0,0 +1,351 @@
+package org.whitesource.jenkins.service;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceRequest;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.dispatch.ServiceRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WssServiceClientImpl;
+import org.whitesource.agent.client.WssServiceException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service client writing the projects of update and policy check requests straight into the request body.
+ * <p>
+ * The agent client serializes the projects to a JSON string, compresses and encodes it to another string,
+ * and url encodes that into the form body, holding several copies of the inventory in memory.
+ * This client writes the same body through a chain of streams (json, gzip, base64, url encoding) while it is sent,
+ * so the body is byte for byte the one the agent client would post, without ever being held in memory.
+ * <p>
+ * Streamed bodies are sent chunked. Servers or proxies rejecting them get plain bodies from then on.
+ * <p>
+ * Requests sent under a {@link Deadline} get the remaining time as connect, connection request and socket timeout,
+ * and are aborted once it expires, so a server trickling its response in does not hold the step past its deadline.
+ */
+public class StreamingWssServiceClient extends WssServiceClientImpl {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(StreamingWssServiceClient.class.getName());
+
+    /**
+     * Set to true to always send plain bodies.
+     */
+    public static final String DISABLED_PROPERTY = StreamingWssServiceClient.class.getName() + ".disabled";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static ScheduledThreadPoolExecutor aborter;
+
+    /* --- Members --- */
+
+    private final Gson gson = new Gson();
+
+    /**
+     * Copies requests without their projects, which are the bulk of them.
+     */
+    private final Gson requestCopier = new GsonBuilder().setExclusionStrategies(new ExclusionStrategy() {
+        public boolean shouldSkipField(FieldAttributes field) {
+            return "projects".equals(field.getName()) && ServiceRequest.class.isAssignableFrom(field.getDeclaringClass());
+        }
+
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }).create();
+
+    private final long connectionTimeoutMillis;
+
+    private volatile boolean streaming = !Boolean.getBoolean(DISABLED_PROPERTY);
+
+    /**
+     * Abort of the request being sent by each thread at its deadline.
+     */
+    private final ThreadLocal<ScheduledFuture<?>> pendingAbort = new ThreadLocal<>();
+
+    /* --- Constructors --- */
+
+    public StreamingWssServiceClient(String serviceUrl, boolean setProxy, int connectionTimeoutMinutes) {
+        super(serviceUrl, setProxy, connectionTimeoutMinutes);
+        this.connectionTimeoutMillis = TimeUnit.MINUTES.toMillis(connectionTimeoutMinutes);
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public UpdateInventoryResult updateInventory(UpdateInventoryRequest request) throws WssServiceException {
+        try {
+            return super.updateInventory(request);
+        } catch (WssServiceException e) {
+            if (!rejectedStreaming(e)) {
+                throw e;
+            }
+            return super.updateInventory(request);
+        } finally {
+            cancelAbort();
+        }
+    }
+
+    @Override
+    public CheckPolicyComplianceResult checkPolicyCompliance(CheckPolicyComplianceRequest request) throws WssServiceException {
+        try {
+            return super.checkPolicyCompliance(request);
+        } catch (WssServiceException e) {
+            if (!rejectedStreaming(e)) {
+                throw e;
+            }
+            return super.checkPolicyCompliance(request);
+        } finally {
+            cancelAbort();
+        }
+    }
+
+    @Override
+    protected HttpRequestBase createHttpRequest(ServiceRequest request) throws IOException {
+        Deadline deadline = Deadline.current();
+        if (deadline.isExpired()) {
+            throw new IOException("Deadline exceeded before sending the request");
+        }
+        cancelAbort();
+        final HttpRequestBase httpRequest = createStreamingRequest(request);
+        if (deadline.isBounded()) {
+            long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+            int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                    connectionTimeoutMillis > 0 ? Math.min(remaining, connectionTimeoutMillis) : remaining));
+            RequestConfig config = httpRequest.getConfig();
+            // the request configuration takes precedence over the client defaults
+            httpRequest.setConfig((config == null ? RequestConfig.custom() : RequestConfig.copy(config))
+                    .setConnectTimeout(timeout)
+                    .setConnectionRequestTimeout(timeout)
+                    .setSocketTimeout(timeout)
+                    .build());
+            // timeouts bound each wait, the abort bounds the whole exchange
+            pendingAbort.set(getAborter().schedule(new Runnable() {
+                public void run() {
+                    httpRequest.abort();
+                }
+            }, remaining, TimeUnit.MILLISECONDS));
+        }
+        return httpRequest;
+    }
+
+    /* --- Private methods --- */
+
+    private void cancelAbort() {
+        ScheduledFuture<?> abort = pendingAbort.get();
+        if (abort != null) {
+            abort.cancel(false);
+            pendingAbort.remove();
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getAborter() {
+        if (aborter == null) {
+            aborter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WhiteSource request deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // requests done in time cancel their abort, don't keep them queued until the deadline
+            aborter.setRemoveOnCancelPolicy(true);
+        }
+        return aborter;
+    }
+
+    private HttpRequestBase createStreamingRequest(ServiceRequest request) throws IOException {
+        Collection<AgentProjectInfo> projects;
+        if (!streaming) {
+            return super.createHttpRequest(request);
+        } else if (request instanceof UpdateInventoryRequest) {
+            projects = ((UpdateInventoryRequest) request).getProjects();
+        } else if (request instanceof CheckPolicyComplianceRequest) {
+            projects = ((CheckPolicyComplianceRequest) request).getProjects();
+        } else {
+            return super.createHttpRequest(request);
+        }
+
+        // let the agent client build a copy of the request around an empty inventory,
+        // then stream the real one in its place, the caller's request is left as is
+        HttpRequestBase httpRequest = super.createHttpRequest(copyWithoutProjects(request));
+        if (!(httpRequest instanceof HttpEntityEnclosingRequestBase)) {
+            return super.createHttpRequest(request);
+        }
+
+        HttpEntityEnclosingRequestBase enclosingRequest = (HttpEntityEnclosingRequestBase) httpRequest;
+        List<NameValuePair> parameters = URLEncodedUtils.parse(enclosingRequest.getEntity());
+        List<NameValuePair> before = new ArrayList<>();
+        List<NameValuePair> after = null;
+        for (NameValuePair parameter : parameters) {
+            if (APIConstants.PARAM_DIFF.equals(parameter.getName())) {
+                after = new ArrayList<>();
+            } else if (after == null) {
+                before.add(parameter);
+            } else {
+                after.add(parameter);
+            }
+        }
+        if (after == null) {
+            return super.createHttpRequest(request);
+        }
+        enclosingRequest.setEntity(new ProjectsEntity(before, after, projects));
+        return httpRequest;
+    }
+
+    /**
+     * @return True if the server refused a streamed body, in which case plain bodies are sent from now on.
+     */
+    private boolean rejectedStreaming(WssServiceException e) {
+        if (!streaming || !(e.getCause() instanceof HttpResponseException)) {
+            return false;
+        }
+        int status = ((HttpResponseException) e.getCause()).getStatusCode();
+        if (status != HttpStatus.SC_LENGTH_REQUIRED && status != HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE
+                && status != HttpStatus.SC_NOT_IMPLEMENTED) {
+            return false;
+        }
+        LOGGER.log(Level.INFO, "WhiteSource server refused a streamed request ({0}), sending plain requests", status);
+        streaming = false;
+        return true;
+    }
+
+    /**
+     * @return A copy of an update or policy check request with no projects, the request itself is not changed.
+     */
+    private ServiceRequest copyWithoutProjects(ServiceRequest request) {
+        ServiceRequest copy = requestCopier.fromJson(requestCopier.toJsonTree(request), request.getClass());
+        if (copy instanceof UpdateInventoryRequest) {
+            ((UpdateInventoryRequest) copy).setProjects(Collections.<AgentProjectInfo>emptyList());
+        } else {
+            ((CheckPolicyComplianceRequest) copy).setProjects(Collections.<AgentProjectInfo>emptyList());
+        }
+        return copy;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Form body serializing the projects every time it is written, so retries can resend it.
+     * The other parameters keep their place around the projects.
+     */
+    private class ProjectsEntity extends AbstractHttpEntity {
+
+        private final List<NameValuePair> before;
+        private final List<NameValuePair> after;
+        private final Collection<AgentProjectInfo> projects;
+
+        private ProjectsEntity(List<NameValuePair> before, List<NameValuePair> after, Collection<AgentProjectInfo> projects) {
+            this.before = before;
+            this.after = after;
+            this.projects = projects;
+            setContentType(ContentType.APPLICATION_FORM_URLENCODED.toString());
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+            String prefix = URLEncodedUtils.format(before, StandardCharsets.UTF_8);
+            if (!prefix.isEmpty()) {
+                prefix += "&";
+            }
+            buffered.write((prefix + APIConstants.PARAM_DIFF + "=").getBytes(StandardCharsets.UTF_8));
+
+            // closing the chain finishes the gzip and base64 trailers, the connection itself stays open
+            Writer writer = new OutputStreamWriter(new GZIPOutputStream(new Base64OutputStream(
+                    new FormEncodingOutputStream(buffered), true, 0, null), BUFFER_SIZE), StandardCharsets.UTF_8);
+            try {
+                gson.toJson(projects, writer);
+            } finally {
+                writer.close();
+            }
+            if (!after.isEmpty()) {
+                buffered.write(("&" + URLEncodedUtils.format(after, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+            }
+            buffered.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Form encodes the bytes written to it, the same way {@link URLEncodedUtils#format} does.
+     * Closing it leaves the underlying stream open.
+     */
+    private static class FormEncodingOutputStream extends FilterOutputStream {
+
+        private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+        private FormEncodingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            b &= 0xFF;
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') ||
+                    b == '-' || b == '_' || b == '.' || b == '*') {
+                out.write(b);
+            } else if (b == ' ') {
+                out.write('+');
+            } else {
+                out.write('%');
+                out.write(HEX[b >> 4]);
+                out.write(HEX[b & 0x0F]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
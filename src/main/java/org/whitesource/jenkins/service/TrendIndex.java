@@ -0,0 +1,217 @@
+package org.whitesource.jenkins.service;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Append only index of the WhiteSource results of the builds of a job, one fixed size record per build.
+ * <p>
+ * Reading the trend only reads the last records of the file, whatever the number of builds of the job.
+ * Records of deleted builds are removed from the index.
+ */
+public final class TrendIndex {
+
+    /* --- Static members --- */
+
+    public static final String INDEX_FILE = "whitesource-trend.bin";
+
+    /**
+     * Build number, timestamp, dependencies, rejections, scan and upload time.
+     */
+    private static final int RECORD_SIZE = 4 + 8 + 4 + 4 + 8 + 8;
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * Whether the job in each folder has an index, so pages of the job don't look for the file on every render.
+     */
+    private static final ConcurrentMap<String, Boolean> EXISTING = new ConcurrentHashMap<>();
+
+    /* --- Constructors --- */
+
+    private TrendIndex() {
+        // utility class
+    }
+
+    /* --- Static methods --- */
+
+    public static File getIndexFile(Job<?, ?> job) {
+        return new File(job.getRootDir(), INDEX_FILE);
+    }
+
+    /**
+     * @return True if builds of the job have records, only the first call for a job looks at the file.
+     */
+    public static boolean exists(Job<?, ?> job) {
+        File file = getIndexFile(job);
+        Boolean exists = EXISTING.get(file.getPath());
+        if (exists == null) {
+            exists = file.isFile();
+            EXISTING.put(file.getPath(), exists);
+        }
+        return exists;
+    }
+
+    /**
+     * Adds the record of a build to the index of its job.
+     */
+    public static void append(Run<?, ?> run, Record record) throws IOException {
+        File file = getIndexFile(run.getParent());
+        synchronized (LOCK) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                // a record partially written by a crash is overwritten
+                out.seek(out.length() - out.length() % RECORD_SIZE);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_SIZE);
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeInt(record.number);
+                data.writeLong(record.timestamp);
+                data.writeInt(record.dependencies);
+                data.writeInt(record.rejections);
+                data.writeLong(record.scanMillis);
+                data.writeLong(record.uploadMillis);
+                out.write(bytes.toByteArray());
+                out.setLength(out.getFilePointer());
+            }
+        }
+        EXISTING.put(file.getPath(), true);
+    }
+
+    /**
+     * Removes the record of a deleted build from the index of its job.
+     */
+    public static void remove(Run<?, ?> run) throws IOException {
+        if (!exists(run.getParent())) {
+            return;
+        }
+        File file = getIndexFile(run.getParent());
+        synchronized (LOCK) {
+            if (!file.isFile()) {
+                return;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            ByteBuffer records = ByteBuffer.wrap(bytes);
+            ByteArrayOutputStream kept = new ByteArrayOutputStream(bytes.length);
+            boolean removed = false;
+            for (int offset = 0; offset + RECORD_SIZE <= bytes.length; offset += RECORD_SIZE) {
+                // each record starts with the build number
+                if (records.getInt(offset) == run.getNumber()) {
+                    removed = true;
+                } else {
+                    kept.write(bytes, offset, RECORD_SIZE);
+                }
+            }
+            if (!removed) {
+                return;
+            }
+            // rewritten aside, readers see either index whole
+            File temp = new File(file.getPath() + ".tmp");
+            Files.write(temp.toPath(), kept.toByteArray());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * @return Up to the given number of the latest records of the job, by build number.
+     */
+    public static List<Record> read(Job<?, ?> job, int max) throws IOException {
+        File file = getIndexFile(job);
+        if (!file.isFile()) {
+            // the job was deleted and created again, looked up again next time
+            EXISTING.remove(file.getPath());
+            return Collections.emptyList();
+        }
+        byte[] bytes;
+        synchronized (LOCK) {
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                long count = in.length() / RECORD_SIZE;
+                long first = Math.max(0, count - max);
+                bytes = new byte[(int) (count - first) * RECORD_SIZE];
+                in.seek(first * RECORD_SIZE);
+                in.readFully(bytes);
+            }
+        }
+
+        List<Record> records = new ArrayList<>(bytes.length / RECORD_SIZE);
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < bytes.length / RECORD_SIZE; i++) {
+            records.add(new Record(data.readInt(), data.readLong(), data.readInt(), data.readInt(), data.readLong(), data.readLong()));
+        }
+        // concurrent builds may complete out of order
+        Collections.sort(records, new Comparator<Record>() {
+            public int compare(Record r1, Record r2) {
+                return Integer.compare(r1.number, r2.number);
+            }
+        });
+        return records;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * WhiteSource result of one build, -1 for values not known.
+     */
+    public static final class Record {
+
+        private final int number;
+        private final long timestamp;
+        private final int dependencies;
+        private final int rejections;
+        private final long scanMillis;
+        private final long uploadMillis;
+
+        public Record(int number, long timestamp, int dependencies, int rejections, long scanMillis, long uploadMillis) {
+            this.number = number;
+            this.timestamp = timestamp;
+            this.dependencies = dependencies;
+            this.rejections = rejections;
+            this.scanMillis = scanMillis;
+            this.uploadMillis = uploadMillis;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Date getDate() {
+            return new Date(timestamp);
+        }
+
+        public int getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * @return Libraries rejected by policies, -1 if policies were not checked.
+         */
+        public int getRejections() {
+            return rejections;
+        }
+
+        public long getScanMillis() {
+            return scanMillis;
+        }
+
+        /**
+         * @return Time to send or queue the update, -1 if not sent by the controller.
+         */
+        public long getUploadMillis() {
+            return uploadMillis;
+        }
+    }
+}
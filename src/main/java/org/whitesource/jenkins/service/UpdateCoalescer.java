@@ -0,0 +1,225 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.client.WssServiceException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the update requests of concurrent builds to the same organization, product and projects.
+ * <p>
+ * The first request of a target opens a group and waits for the coalescing window, requests of other builds
+ * to the same target join the group meanwhile. The first request then sends the merged projects once
+ * and every build of the group gets the shared result. Requests arriving once the group is sent open a new one.
+ * <p>
+ * Once its requests joined, a group is always sent: a first request interrupted during the window sends it right away.
+ */
+public final class UpdateCoalescer {
+
+    /* --- Static members --- */
+
+    private static final UpdateCoalescer INSTANCE = new UpdateCoalescer();
+
+    /* --- Members --- */
+
+    private final Map<String, Group> open = new HashMap<>();
+
+    /* --- Constructors --- */
+
+    private UpdateCoalescer() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static UpdateCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Key of the target of an update request, only digests of the tokens are kept.
+     */
+    public static String key(String orgToken, String userKey, String product, String productVersion,
+                             Collection<AgentProjectInfo> projectInfos) {
+        List<String> projects = new ArrayList<>();
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            projects.add(projectId(projectInfo));
+        }
+        Collections.sort(projects);
+
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        for (String value : Arrays.asList(orgToken, userKey, product, productVersion, String.valueOf(projects))) {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Sends the projects, merged with the requests of other builds to the same target within the window.
+     *
+     * @param lastWriterWins Send the projects of the last request of the group instead of the union of all requests.
+     * @param deadline       Deadline of the caller, bounds both the window and the wait for the result of another build.
+     * @param sender         Sends the merged projects, called by the build that opened the group.
+     */
+    public List<UpdateInventoryResult> submit(String key, Collection<AgentProjectInfo> projectInfos, long windowMillis,
+                                              boolean lastWriterWins, Deadline deadline, Sender sender)
+            throws WssServiceException, InterruptedException {
+        Group group;
+        boolean leader = false;
+        synchronized (this) {
+            group = open.get(key);
+            if (group == null) {
+                group = new Group();
+                open.put(key, group);
+                leader = true;
+            }
+            group.add(projectInfos);
+        }
+
+        if (!leader) {
+            return group.await(deadline);
+        }
+
+        boolean interrupted = false;
+        try {
+            Thread.sleep(Math.min(windowMillis, deadline.remaining(TimeUnit.MILLISECONDS)));
+        } catch (InterruptedException e) {
+            // other builds joined the group, it is sent now instead of failing them all
+            interrupted = true;
+        } finally {
+            synchronized (this) {
+                // late requests open a new group
+                open.remove(key);
+            }
+        }
+        // the group is complete whatever happens, other builds are waiting on it
+        List<UpdateInventoryResult> results = null;
+        Exception failure = new WssServiceException("Update request was not sent");
+        try {
+            results = sender.send(group.merge(lastWriterWins), group.size());
+            failure = null;
+            return results;
+        } catch (WssServiceException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            group.complete(results, failure);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static String projectId(AgentProjectInfo projectInfo) {
+        Coordinates coordinates = projectInfo.getCoordinates();
+        if (coordinates == null) {
+            return "token:" + DigestUtils.sha1Hex(String.valueOf(projectInfo.getProjectToken()));
+        }
+        return coordinates.getGroupId() + ':' + coordinates.getArtifactId() + ':' + coordinates.getVersion() +
+                (projectInfo.getProjectToken() == null ? "" : ":" + DigestUtils.sha1Hex(projectInfo.getProjectToken()));
+    }
+
+    private static String dependencyId(DependencyInfo dependency) {
+        return dependency.getGroupId() + ':' + dependency.getArtifactId() + ':' + dependency.getVersion() + ':' +
+                dependency.getClassifier() + ':' + dependency.getSha1();
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Sends the merged projects of a group.
+     */
+    public interface Sender {
+
+        List<UpdateInventoryResult> send(Collection<AgentProjectInfo> projectInfos, int mergedRequests) throws WssServiceException;
+    }
+
+    private static final class Group {
+
+        private final List<Collection<AgentProjectInfo>> requests = new ArrayList<>();
+        private boolean done;
+        private List<UpdateInventoryResult> results;
+        private Exception failure;
+
+        synchronized void add(Collection<AgentProjectInfo> projectInfos) {
+            requests.add(projectInfos);
+        }
+
+        synchronized int size() {
+            return requests.size();
+        }
+
+        /**
+         * @return The projects of the last request, or each project with the union of its dependencies in all requests.
+         */
+        synchronized Collection<AgentProjectInfo> merge(boolean lastWriterWins) {
+            if (lastWriterWins || requests.size() == 1) {
+                return requests.get(requests.size() - 1);
+            }
+            Map<String, AgentProjectInfo> projects = new LinkedHashMap<>();
+            Map<String, Set<String>> projectDependencies = new HashMap<>();
+            for (Collection<AgentProjectInfo> request : requests) {
+                for (AgentProjectInfo projectInfo : request) {
+                    String projectId = projectId(projectInfo);
+                    AgentProjectInfo merged = projects.get(projectId);
+                    if (merged == null) {
+                        merged = new AgentProjectInfo();
+                        merged.setCoordinates(projectInfo.getCoordinates());
+                        merged.setParentCoordinates(projectInfo.getParentCoordinates());
+                        merged.setProjectToken(projectInfo.getProjectToken());
+                        merged.setDependencies(new ArrayList<DependencyInfo>());
+                        projects.put(projectId, merged);
+                        projectDependencies.put(projectId, new HashSet<String>());
+                    }
+                    if (projectInfo.getDependencies() == null) {
+                        continue;
+                    }
+                    Set<String> seen = projectDependencies.get(projectId);
+                    for (DependencyInfo dependency : projectInfo.getDependencies()) {
+                        if (seen.add(dependencyId(dependency))) {
+                            merged.getDependencies().add(dependency);
+                        }
+                    }
+                }
+            }
+            return projects.values();
+        }
+
+        synchronized void complete(List<UpdateInventoryResult> results, Exception failure) {
+            this.results = results;
+            this.failure = failure;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized List<UpdateInventoryResult> await(Deadline deadline) throws WssServiceException, InterruptedException {
+            while (!done) {
+                long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+                if (remaining <= 0) {
+                    // the projects of this build are still sent with the group
+                    throw new WssServiceException("Timed out waiting for the merged update request of another build");
+                }
+                wait(remaining);
+            }
+            if (failure != null) {
+                WssServiceException e = new WssServiceException("Merged update request failed: " + failure.getMessage());
+                e.initCause(failure);
+                throw e;
+            }
+            return results;
+        }
+    }
+}
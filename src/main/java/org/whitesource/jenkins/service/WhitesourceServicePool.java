@@ -0,0 +1,284 @@
+package org.whitesource.jenkins.service;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.jenkins.Constants;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide pool of {@link WhitesourceService} clients.
+ * <p>
+ * Clients are kept per service url, proxy settings and timeout so builds reuse their open keep-alive connections
+ * instead of paying for a new HTTP client, proxy setup and TLS handshake every time.
+ * A client is leased to a single build at a time, returned to the pool once the build is done with it
+ * and shut down after being idle for {@link #IDLE_TIMEOUT} milliseconds.
+ */
+public final class WhitesourceServicePool {
+
+    /* --- Static members --- */
+
+    private static final Logger LOGGER = Logger.getLogger(WhitesourceServicePool.class.getName());
+
+    public static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_IDLE_PER_KEY = 8;
+
+    private static final WhitesourceServicePool INSTANCE = new WhitesourceServicePool();
+
+    /* --- Members --- */
+
+    private final Map<Key, Deque<IdleService>> idle = new HashMap<>();
+
+    private final Map<WhitesourceService, Lease> leased = new IdentityHashMap<>();
+
+    /**
+     * Incremented on every configuration change, clients of older generations are never reused.
+     */
+    private long generation;
+
+    /* --- Constructors --- */
+
+    private WhitesourceServicePool() {
+        // singleton
+    }
+
+    /* --- Static methods --- */
+
+    public static WhitesourceServicePool get() {
+        return INSTANCE;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Leases a client for the given settings, creating one if none is idle.
+     */
+    public WhitesourceService acquire(Key key) {
+        long leaseGeneration;
+        synchronized (this) {
+            leaseGeneration = generation;
+            Deque<IdleService> services = idle.get(key);
+            if (services != null && !services.isEmpty()) {
+                WhitesourceService service = services.pollFirst().service;
+                leased.put(service, new Lease(key, leaseGeneration));
+                return service;
+            }
+        }
+
+        WhitesourceService service = key.create();
+        synchronized (this) {
+            leased.put(service, new Lease(key, leaseGeneration));
+        }
+        return service;
+    }
+
+    /**
+     * Returns a leased client to the pool.
+     */
+    public void release(WhitesourceService service) {
+        if (service == null) {
+            return;
+        }
+        boolean shutdown = true;
+        synchronized (this) {
+            Lease lease = leased.remove(service);
+            if (lease != null && lease.generation == generation) {
+                Deque<IdleService> services = idle.get(lease.key);
+                if (services == null) {
+                    services = new ArrayDeque<>();
+                    idle.put(lease.key, services);
+                }
+                if (services.size() < MAX_IDLE_PER_KEY) {
+                    // most recently used first, so the least used clients age out
+                    services.addFirst(new IdleService(service, System.currentTimeMillis()));
+                    shutdown = false;
+                }
+            }
+        }
+        if (shutdown) {
+            shutdown(service);
+        }
+    }
+
+    /**
+     * Drops all pooled clients, called when the global configuration changes.
+     * Clients currently leased are shut down once released.
+     */
+    public void invalidate() {
+        List<IdleService> dropped = new ArrayList<>();
+        synchronized (this) {
+            generation++;
+            for (Deque<IdleService> services : idle.values()) {
+                dropped.addAll(services);
+            }
+            idle.clear();
+        }
+        for (IdleService idleService : dropped) {
+            shutdown(idleService.service);
+        }
+    }
+
+    /**
+     * Shuts down the clients idle for longer than {@link #IDLE_TIMEOUT}.
+     */
+    public void evictIdle() {
+        long threshold = System.currentTimeMillis() - IDLE_TIMEOUT;
+        List<IdleService> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Deque<IdleService>> it = idle.values().iterator();
+            while (it.hasNext()) {
+                Deque<IdleService> services = it.next();
+                while (!services.isEmpty() && services.peekLast().lastUsed < threshold) {
+                    evicted.add(services.pollLast());
+                }
+                if (services.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        for (IdleService idleService : evicted) {
+            shutdown(idleService.service);
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static void shutdown(WhitesourceService service) {
+        try {
+            service.shutdown();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to shut down WhiteSource client", e);
+        }
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Settings identifying interchangeable clients.
+     * Serializable so agents sending update requests themselves can create a client with the same settings.
+     */
+    public static final class Key implements Serializable {
+
+        private static final long serialVersionUID = -3164802941552284375L;
+
+        private final String serviceUrl;
+        private final int connectionTimeout;
+        private final boolean proxyConfigured;
+        private final String proxyHost;
+        private final int proxyPort;
+        private final String proxyUserName;
+        private final String proxyPassword;
+
+        public Key(String serviceUrl, int connectionTimeout) {
+            this(serviceUrl, connectionTimeout, false, null, 0, null, null);
+        }
+
+        public Key(String serviceUrl, int connectionTimeout, boolean proxyConfigured,
+                   String proxyHost, int proxyPort, String proxyUserName, String proxyPassword) {
+            this.serviceUrl = serviceUrl;
+            this.connectionTimeout = connectionTimeout;
+            this.proxyConfigured = proxyConfigured;
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            this.proxyUserName = proxyUserName;
+            this.proxyPassword = proxyPassword;
+        }
+
+        /**
+         * Creates a client outside of the pool, to be shut down by the caller.
+         */
+        public WhitesourceService create() {
+            WhitesourceService service = new WhitesourceService(Constants.AGENT_TYPE, Constants.PLUGIN_AGENTS_VERSION,
+                    Constants.PLUGIN_VERSION, serviceUrl, proxyConfigured, connectionTimeout);
+            // inventories are streamed into the request body instead of being built as strings first,
+            // the replaced client holds its own connection manager
+            service.getClient().shutdown();
+            service.setClient(new StreamingWssServiceClient(serviceUrl, proxyConfigured, connectionTimeout));
+            if (proxyConfigured) {
+                service.getClient().setProxy(proxyHost, proxyPort, proxyUserName, proxyPassword);
+            }
+            return service;
+        }
+
+        public String getServiceUrl() {
+            return serviceUrl;
+        }
+
+        public int getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return connectionTimeout == key.connectionTimeout &&
+                    proxyConfigured == key.proxyConfigured &&
+                    proxyPort == key.proxyPort &&
+                    Objects.equals(serviceUrl, key.serviceUrl) &&
+                    Objects.equals(proxyHost, key.proxyHost) &&
+                    Objects.equals(proxyUserName, key.proxyUserName) &&
+                    Objects.equals(proxyPassword, key.proxyPassword);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceUrl, connectionTimeout, proxyConfigured, proxyHost, proxyPort, proxyUserName, proxyPassword);
+        }
+    }
+
+    private static final class Lease {
+
+        private final Key key;
+        private final long generation;
+
+        private Lease(Key key, long generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+    }
+
+    private static final class IdleService {
+
+        private final WhitesourceService service;
+        private final long lastUsed;
+
+        private IdleService(WhitesourceService service, long lastUsed) {
+            this.service = service;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Periodically shuts down idle clients.
+     */
+    @Extension
+    public static class IdleEviction extends AsyncPeriodicWork {
+
+        public IdleEviction() {
+            super("WhiteSource idle client eviction");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            get().evictIdle();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Virtualized view of the libraries of a policy check report.
+ * Only the rows in sight are in the page, fetched from the server one page at a time.
+ */
+function whiteSourcePolicyReport(root, queryUrl) {
+    var ROW_HEIGHT = 24;
+    var PAGE_SIZE = 100;
+    var COLUMNS = [
+        {field: 'project', width: '25%'},
+        {field: 'library', width: '35%'},
+        {field: 'policy', width: '25%'},
+        {field: 'action', width: '15%'}
+    ];
+
+    var viewport = root.querySelector('.ws-viewport');
+    var rows = root.querySelector('.ws-rows');
+    var status = root.querySelector('.ws-status');
+    var filterInput = root.querySelector('.ws-filter');
+    var actionSelect = root.querySelector('.ws-action');
+
+    var query = {filter: '', action: '', sort: 'library', descending: false};
+    var pages = {};
+    var loading = {};
+    var matches = 0;
+    var generation = 0;
+    var filterTimer = null;
+
+    function reset() {
+        generation++;
+        pages = {};
+        loading = {};
+        viewport.scrollTop = 0;
+        load(0);
+    }
+
+    function load(page) {
+        if (pages[page] || loading[page]) {
+            return;
+        }
+        loading[page] = true;
+        var requested = generation;
+        var url = queryUrl + '?page=' + page + '&size=' + PAGE_SIZE +
+            '&filter=' + encodeURIComponent(query.filter) +
+            '&action=' + encodeURIComponent(query.action) +
+            '&sort=' + encodeURIComponent(query.sort) +
+            '&descending=' + query.descending;
+        var request = new XMLHttpRequest();
+        request.open('GET', url, true);
+        request.onreadystatechange = function () {
+            if (request.readyState !== 4 || requested !== generation) {
+                return;
+            }
+            delete loading[page];
+            if (request.status !== 200) {
+                status.textContent = 'Failed to load the libraries (' + request.status + ')';
+                return;
+            }
+            var result = JSON.parse(request.responseText);
+            pages[page] = result.libraries;
+            matches = result.matches;
+            status.textContent = result.matches + ' of ' + result.total + ' libraries';
+            rows.style.height = (matches * ROW_HEIGHT) + 'px';
+            render();
+        };
+        request.send();
+    }
+
+    function render() {
+        var first = Math.floor(viewport.scrollTop / ROW_HEIGHT);
+        var last = Math.min(matches, first + Math.ceil(viewport.clientHeight / ROW_HEIGHT) + 1);
+        var fragment = document.createDocumentFragment();
+        for (var i = first; i < last; i++) {
+            var page = Math.floor(i / PAGE_SIZE);
+            if (!pages[page]) {
+                load(page);
+                continue;
+            }
+            var library = pages[page][i % PAGE_SIZE];
+            if (library) {
+                fragment.appendChild(createRow(library, i));
+            }
+        }
+        while (rows.firstChild) {
+            rows.removeChild(rows.firstChild);
+        }
+        rows.appendChild(fragment);
+    }
+
+    function createRow(library, index) {
+        var row = document.createElement('div');
+        row.style.position = 'absolute';
+        row.style.top = (index * ROW_HEIGHT) + 'px';
+        row.style.height = ROW_HEIGHT + 'px';
+        row.style.lineHeight = ROW_HEIGHT + 'px';
+        row.style.width = '100%';
+        row.style.whiteSpace = 'nowrap';
+        if (library.action === 'Reject') {
+            row.style.color = '#c00';
+        }
+        for (var c = 0; c < COLUMNS.length; c++) {
+            var cell = document.createElement('span');
+            cell.style.display = 'inline-block';
+            cell.style.width = COLUMNS[c].width;
+            cell.style.overflow = 'hidden';
+            cell.style.textOverflow = 'ellipsis';
+            cell.style.verticalAlign = 'top';
+            cell.style.boxSizing = 'border-box';
+            cell.style.paddingLeft = '4px';
+            cell.textContent = library[COLUMNS[c].field] || '';
+            if (COLUMNS[c].field === 'library' && library.sha1) {
+                cell.title = library.sha1;
+            }
+            row.appendChild(cell);
+        }
+        return row;
+    }
+
+    viewport.addEventListener('scroll', render);
+    window.addEventListener('resize', render);
+
+    filterInput.addEventListener('input', function () {
+        clearTimeout(filterTimer);
+        filterTimer = setTimeout(function () {
+            query.filter = filterInput.value;
+            reset();
+        }, 300);
+    });
+
+    actionSelect.addEventListener('change', function () {
+        query.action = actionSelect.value;
+        reset();
+    });
+
+    var headers = root.querySelectorAll('.ws-sort');
+    for (var h = 0; h < headers.length; h++) {
+        headers[h].addEventListener('click', function () {
+            var sort = this.getAttribute('data-sort');
+            query.descending = query.sort === sort ? !query.descending : false;
+            query.sort = sort;
+            reset();
+        });
+    }
+
+    reset();
+}
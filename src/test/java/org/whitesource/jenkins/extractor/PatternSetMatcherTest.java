@@ -0,0 +1,74 @@
+package org.whitesource.jenkins.extractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatternSetMatcherTest {
+
+    private static final List<String> MODULES = Arrays.asList("core", "core-api", "module-1", "module-12", "module-",
+            "modules", "test-utils", "my.module", "myXmodule", "a", "b", "ab");
+
+    /* --- Tests --- */
+
+    @Test
+    public void modulePatternsMatchAsTheyAlwaysDid() {
+        for (String pattern : Arrays.asList("core", "core*", "*-api", "test-*", "*", "a|b", "module-[0-9]+", "module-?",
+                "my.module", "c*e", "(core|module)-.*", "module-\\d", "^core$")) {
+            PatternSetMatcher matcher = PatternSetMatcher.compile(pattern);
+            for (String module : MODULES) {
+                assertEquals(pattern + " against " + module, legacyMatch(module, pattern), matcher.matches(module));
+            }
+        }
+    }
+
+    @Test
+    public void modulePatternSetMatchesAny() {
+        PatternSetMatcher matcher = PatternSetMatcher.compile("a|b", "test-*", "*-api", "module-[0-9]+");
+        assertTrue(matcher.matches("a"));
+        assertTrue(matcher.matches("test-utils"));
+        assertTrue(matcher.matches("core-api"));
+        assertTrue(matcher.matches("module-12"));
+        assertFalse(matcher.matches("ab"));
+        assertFalse(matcher.matches("module-"));
+    }
+
+    @Test
+    public void regexPrefix() {
+        PatternSetMatcher matcher = PatternSetMatcher.compile(PatternSetMatcher.REGEX_PREFIX + "my.module");
+        assertTrue(matcher.matches("my.module"));
+        assertTrue(matcher.matches("myXmodule"));
+    }
+
+    @Test
+    public void fileNameGlobs() {
+        PatternSetMatcher matcher = PatternSetMatcher.compileGlobs("*.jar", "lib-?.so", "exact.dll", "native*");
+        assertTrue(matcher.matches("commons-lang-2.6.jar"));
+        assertTrue(matcher.matches("lib-1.so"));
+        assertTrue(matcher.matches("exact.dll"));
+        assertTrue(matcher.matches("native.zip"));
+        assertFalse(matcher.matches("lib-12.so"));
+        assertFalse(matcher.matches("exactXdll"));
+        assertFalse(matcher.matches("jar"));
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(PatternSetMatcher.compile().isEmpty());
+        assertFalse(PatternSetMatcher.compile(" ", "").matches("core"));
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * The matching of module patterns before the patterns were compiled once.
+     */
+    private static boolean legacyMatch(String value, String pattern) {
+        return value.matches(pattern.replace(".", "\\.").replace("*", ".*"));
+    }
+}
@@ -0,0 +1,73 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MavenDependencyGraphTest {
+
+    private static final String WEB = "org.acme:web:jar:1.0";
+    private static final String SPRING = "org.springframework:spring-core:jar:4.3.0";
+    private static final String LOGGING = "commons-logging:commons-logging:jar:1.2";
+    private static final String JUNIT = "junit:junit:jar:4.12";
+    private static final String HAMCREST = "org.hamcrest:hamcrest-core:jar:1.3";
+
+    /* --- Tests --- */
+
+    @Test
+    public void paths() {
+        MavenDependencyGraph graph = graph(
+                Arrays.asList(WEB, SPRING, LOGGING),
+                Arrays.asList("compile", "compile", "compile"),
+                Arrays.asList(null, WEB, SPRING));
+
+        assertEquals(Arrays.asList(WEB, SPRING, LOGGING), graph.getPath(LOGGING));
+        assertEquals(Collections.singletonList(WEB), graph.getPath(WEB));
+        assertTrue(graph.getPath(JUNIT).isEmpty());
+        assertEquals(SPRING, graph.getParent(LOGGING));
+        assertNull(graph.getParent(WEB));
+    }
+
+    @Test
+    public void deltaRebuildsTheGraph() {
+        MavenDependencyGraph base = graph(
+                Arrays.asList(WEB, SPRING, LOGGING, JUNIT),
+                Arrays.asList("compile", "compile", "compile", "test"),
+                Arrays.asList(null, WEB, SPRING, null));
+        MavenDependencyGraph graph = graph(
+                Arrays.asList(WEB, SPRING, LOGGING, HAMCREST),
+                Arrays.asList("compile", "compile", "runtime", "test"),
+                Arrays.asList(null, WEB, WEB, null));
+
+        MavenDependencyGraph.Delta delta = graph.diff(7, base);
+        MavenDependencyGraph applied = base.apply(delta);
+
+        assertEquals(7, delta.getBaseBuild());
+        assertEquals(4, delta.size());
+        assertEquals(4, applied.size());
+        assertFalse(applied.contains(JUNIT));
+        assertEquals("runtime", applied.getScope(LOGGING));
+        assertEquals(Arrays.asList(WEB, LOGGING), applied.getPath(LOGGING));
+        assertEquals(Collections.singletonList(HAMCREST), applied.getPath(HAMCREST));
+    }
+
+    @Test
+    public void unchangedGraphHasAnEmptyDelta() {
+        MavenDependencyGraph graph = graph(
+                Arrays.asList(WEB, SPRING),
+                Arrays.asList("compile", "compile"),
+                Arrays.asList(null, WEB));
+
+        assertEquals(0, graph.diff(1, graph).size());
+    }
+
+    /* --- Private methods --- */
+
+    private static MavenDependencyGraph graph(List<String> ids, List<String> scopes, List<String> parentIds) {
+        return new MavenDependencyGraph(ids, scopes, parentIds);
+    }
+}
@@ -0,0 +1,147 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import hudson.model.TaskListener;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.hash.ChecksumUtils;
+import org.whitesource.jenkins.model.RemoteDependency;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Maven build output of a fixture workspace, standing in for the output of a real build.
+ */
+public class MavenDependencyListScannerTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workspace;
+
+    private File repository;
+
+    private String repoLocal;
+
+    /* --- Test setup --- */
+
+    @Before
+    public void setUp() throws IOException {
+        workspace = folder.newFolder("workspace");
+        repository = folder.newFolder("repository");
+        artifact("commons-lang/commons-lang/2.6/commons-lang-2.6.jar");
+        artifact("junit/junit/4.12/junit-4.12.jar");
+        repoLocal = System.getProperty("maven.repo.local");
+        System.setProperty("maven.repo.local", repository.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        if (repoLocal == null) {
+            System.clearProperty("maven.repo.local");
+        } else {
+            System.setProperty("maven.repo.local", repoLocal);
+        }
+    }
+
+    /* --- Tests --- */
+
+    @Test
+    public void readsSpyLogsOfTheWorkspaceTemporaryFolder() throws Exception {
+        fixture("maven-spy.log", new File(folder.getRoot(), "workspace@tmp/withMaven1a2b3c/maven-spy-20180301-100000-1.log"));
+
+        Map<String, Collection<RemoteDependency>> modules = scan();
+
+        assertEquals(new HashSet<>(Arrays.asList("core", "web")), modules.keySet());
+        Map<String, RemoteDependency> core = byArtifactId(modules.get("core"));
+        assertEquals(2, core.size());
+        assertEquals("test", core.get("junit").getScope());
+        assertEquals(sha1("junit/junit/4.12/junit-4.12.jar"), core.get("junit").getSha1());
+        assertEquals(sha1("commons-lang/commons-lang/2.6/commons-lang-2.6.jar"),
+                byArtifactId(modules.get("web")).get("commons-lang").getSha1());
+    }
+
+    @Test
+    public void readsDependencyListsFromTheLocalRepository() throws Exception {
+        fixture("dependency-list.txt", new File(workspace, "module-a/target/dependency-list.txt"));
+
+        Map<String, Collection<RemoteDependency>> modules = scan();
+
+        assertEquals(Collections.singleton("module-a"), modules.keySet());
+        Map<String, RemoteDependency> dependencies = byArtifactId(modules.get("module-a"));
+        assertEquals(3, dependencies.size());
+        assertEquals(sha1("commons-lang/commons-lang/2.6/commons-lang-2.6.jar"), dependencies.get("commons-lang").getSha1());
+        assertEquals(sha1("junit/junit/4.12/junit-4.12.jar"), dependencies.get("junit").getSha1());
+        assertEquals("tests", dependencies.get("missing").getClassifier());
+        assertNull("not in the local repository", dependencies.get("missing").getSha1());
+    }
+
+    @Test
+    public void resultIsSentBackFromAgents() throws Exception {
+        fixture("maven-spy.log", new File(workspace, "maven-spy-20180301-100000-1.log"));
+        fixture("dependency-list.txt", new File(workspace, "module-a/target/dependency-list.txt"));
+        Map<String, Collection<RemoteDependency>> modules = scan();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(modules);
+        }
+        Map<?, ?> received;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            received = (Map<?, ?>) in.readObject();
+        }
+
+        assertEquals(modules.keySet(), received.keySet());
+        for (Map.Entry<String, Collection<RemoteDependency>> module : modules.entrySet()) {
+            assertEquals(module.getValue().size(), ((Collection<?>) received.get(module.getKey())).size());
+        }
+    }
+
+    @Test
+    public void noBuildOutput() throws Exception {
+        assertTrue(scan().isEmpty());
+    }
+
+    /* --- Private methods --- */
+
+    private Map<String, Collection<RemoteDependency>> scan() throws Exception {
+        return new MavenDependencyListScanner(MavenPipelineOssInfoExtractor.DEFAULT_DEPENDENCY_LISTS, TaskListener.NULL)
+                .invoke(workspace, null);
+    }
+
+    private void fixture(String name, File target) throws IOException {
+        String content;
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            content = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        content = content.replace("@WORKSPACE@", workspace.getAbsolutePath())
+                .replace("@REPOSITORY@", repository.getAbsolutePath());
+        FileUtils.writeStringToFile(target, content, StandardCharsets.UTF_8);
+    }
+
+    private void artifact(String path) throws IOException {
+        FileUtils.writeStringToFile(new File(repository, path), "content of " + path, StandardCharsets.UTF_8);
+    }
+
+    private String sha1(String path) throws IOException {
+        return ChecksumUtils.calculateSHA1(new File(repository, path));
+    }
+
+    private static Map<String, RemoteDependency> byArtifactId(Collection<RemoteDependency> dependencies) {
+        Map<String, RemoteDependency> byArtifactId = new HashMap<>();
+        for (RemoteDependency dependency : dependencies) {
+            byArtifactId.put(dependency.getArtifactId(), dependency);
+        }
+        return byArtifactId;
+    }
+}
@@ -0,0 +1,67 @@
+package org.whitesource.jenkins.extractor.maven;
+
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.jenkins.model.RemoteDependency;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Projects reported for the modules of a pipeline maven build.
+ */
+public class MavenPipelineOssInfoExtractorTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    /* --- Tests --- */
+
+    @Test
+    public void singleModuleUsesTheProjectToken() {
+        Collection<AgentProjectInfo> projectInfos = extractor().toProjectInfos(modules("core"));
+
+        AgentProjectInfo projectInfo = projectInfos.iterator().next();
+        assertEquals("project-token", projectInfo.getProjectToken());
+        assertEquals("core", projectInfo.getCoordinates().getArtifactId());
+    }
+
+    @Test
+    public void modulesAreReportedByCoordinates() {
+        Collection<AgentProjectInfo> projectInfos = extractor().toProjectInfos(modules("core", "web"));
+
+        Set<String> artifactIds = new HashSet<>();
+        for (AgentProjectInfo projectInfo : projectInfos) {
+            assertNull("modules must not share a project", projectInfo.getProjectToken());
+            assertEquals("1.0", projectInfo.getCoordinates().getVersion());
+            artifactIds.add(projectInfo.getCoordinates().getArtifactId());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("core", "web")), artifactIds);
+    }
+
+    /* --- Private methods --- */
+
+    private static MavenPipelineOssInfoExtractor extractor() {
+        return new MavenPipelineOssInfoExtractor(null, null, TaskListener.NULL, Secret.fromString("project-token"), "1.0", null);
+    }
+
+    private static Map<String, Collection<RemoteDependency>> modules(String... names) {
+        Map<String, Collection<RemoteDependency>> modules = new LinkedHashMap<>();
+        for (String name : names) {
+            RemoteDependency dependency = new RemoteDependency();
+            dependency.setGroupId("org.example");
+            dependency.setArtifactId(name + "-library");
+            dependency.setVersion("1.0");
+            dependency.setSha1(String.format("%040x", name.hashCode() & Integer.MAX_VALUE));
+            modules.put(name, Collections.singletonList(dependency));
+        }
+        return modules;
+    }
+}
@@ -0,0 +1,159 @@
+package org.whitesource.jenkins.model;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.jenkins.Constants;
+import org.whitesource.jenkins.WhiteSourcePublisher;
+import org.whitesource.jenkins.service.RequestStats;
+import org.whitesource.jenkins.stub.WhiteSourceStubServer;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Simulates concurrent builds sending their results to WhiteSource and reports how the plugin behaves.
+ * <p>
+ * The load is set with system properties, e.g.
+ * <code>mvn test -DskipTests=false -Dtest=WhiteSourceStepLoadTest -Dwhitesource.load.builds=200
+ * -Dwhitesource.load.latency=500 -Dwhitesource.load.errorRate=0.05 -Dwhitesource.load.throttle=50</code>.
+ */
+public class WhiteSourceStepLoadTest {
+
+    /* --- Static members --- */
+
+    private static final int BUILDS = Integer.getInteger("whitesource.load.builds", 20);
+    private static final int DEPENDENCIES = Integer.getInteger("whitesource.load.dependencies", 200);
+    private static final long LATENCY = Long.getLong("whitesource.load.latency", 50);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("whitesource.load.errorRate", "0"));
+    private static final int THROTTLE = Integer.getInteger("whitesource.load.throttle", 0);
+
+    /* --- Members --- */
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private WhiteSourceStubServer server;
+
+    /* --- Test setup --- */
+
+    @Before
+    public void startServer() throws Exception {
+        server = new WhiteSourceStubServer().latency(LATENCY).errorRate(ERROR_RATE).throttle(THROTTLE);
+        WhiteSourcePublisher.DescriptorImpl descriptor = j.jenkins.getDescriptorByType(WhiteSourcePublisher.DescriptorImpl.class);
+        descriptor.setServiceUrl(server.getServiceUrl());
+        descriptor.setApiToken(Secret.fromString("org-token"));
+        descriptor.setCheckPolicies(Constants.ENABLE_ALL);
+        descriptor.setFailOnError(false);
+        descriptor.setConnectionRetries("1");
+        descriptor.setConnectionRetriesInterval("1");
+    }
+
+    @After
+    public void stopServer() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /* --- Tests --- */
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        final FreeStyleBuild run = j.buildAndAssertSuccess(project);
+        final WhiteSourceDescriptor globalConfig = new WhiteSourceDescriptor(
+                j.jenkins.getDescriptorByType(WhiteSourcePublisher.DescriptorImpl.class));
+
+        ExecutorService builds = Executors.newFixedThreadPool(BUILDS);
+        List<Future<Long>> durations = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        int peakThreads = 0;
+        try {
+            for (int i = 0; i < BUILDS; i++) {
+                final int build = i;
+                durations.add(builds.submit(new Callable<Long>() {
+                    public Long call() {
+                        WhiteSourceStep step = new WhiteSourceStep(globalConfig, null, null, null, null);
+                        step.setProductNameOrToken("Load test");
+                        long start = System.nanoTime();
+                        step.update(run, TaskListener.NULL, projectInfos(build));
+                        return System.nanoTime() - start;
+                    }
+                }));
+            }
+            List<Long> latencies = new ArrayList<>();
+            for (Future<Long> duration : durations) {
+                while (true) {
+                    peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+                    try {
+                        latencies.add(duration.get(100, TimeUnit.MILLISECONDS));
+                        break;
+                    } catch (TimeoutException e) {
+                        // still running, sample the threads again
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - startedAt;
+            report(latencies, elapsed, peakThreads);
+        } finally {
+            builds.shutdownNow();
+        }
+
+        if (ERROR_RATE == 0 && THROTTLE == 0) {
+            assertEquals(BUILDS, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+            assertEquals(BUILDS, server.getReceived(RequestType.UPDATE));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static Collection<AgentProjectInfo> projectInfos(int build) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("org.example", "module-" + build, "1.0"));
+        for (int i = 0; i < DEPENDENCIES; i++) {
+            DependencyInfo dependency = new DependencyInfo("org.example", "library-" + i, "1." + i);
+            dependency.setSha1(String.format("%040x", i));
+            project.getDependencies().add(dependency);
+        }
+        return Collections.singletonList(project);
+    }
+
+    private void report(List<Long> latencies, long elapsed, int peakThreads) {
+        Collections.sort(latencies);
+        RequestStats stats = RequestStats.get();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d builds, %d dependencies each, server latency %d ms, error rate %.2f, throttle %d/s%n",
+                BUILDS, DEPENDENCIES, LATENCY, ERROR_RATE, THROTTLE));
+        report.append(String.format("throughput %.1f builds/s, step p50 %d ms, p99 %d ms%n",
+                BUILDS / (elapsed / 1e9), percentileMillis(latencies, 50), percentileMillis(latencies, 99)));
+        for (RequestStats.Operation operation : stats.getOperations()) {
+            report.append(String.format("%s: %d requests, %d failures, p50 %d ms, p99 %d ms%n", operation.getName(),
+                    operation.getCount(), operation.getFailures(), operation.getP50Millis(), operation.getP99Millis()));
+        }
+        report.append(String.format("server: %d updates, %d policy checks, %d errors, %d throttled%n",
+                server.getReceived(RequestType.UPDATE), server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE),
+                server.getFailed(), server.getThrottled()));
+        report.append(String.format("heap %d / %d MB, threads %d (peak %d)",
+                stats.getHeapUsedMb(), stats.getHeapMaxMb(), stats.getThreadCount(), peakThreads));
+        System.out.println(report);
+    }
+
+    private static long percentileMillis(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+}
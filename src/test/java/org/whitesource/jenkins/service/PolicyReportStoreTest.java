@@ -0,0 +1,73 @@
+package org.whitesource.jenkins.service;
+
+import hudson.model.FreeStyleBuild;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.ResourceInfo;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rendered reports kept while they are served.
+ */
+public class PolicyReportStoreTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    /* --- Tests --- */
+
+    @Test
+    public void servedReportOutlivesItsEviction() throws Exception {
+        FreeStyleBuild build = j.buildAndAssertSuccess(j.createFreeStyleProject());
+        PolicyReportStore.get().store(build, result());
+
+        PolicyReportStore.Report report = PolicyReportStore.get().render(build);
+        File index = report.getCompressedFile("index.html");
+        assertNotNull(index);
+
+        // stored again, the rendered report is stale
+        PolicyReportStore.get().store(build, result());
+        assertTrue(index.isFile());
+
+        report.release();
+        assertFalse(index.isFile());
+    }
+
+    @Test
+    public void releasedReportStaysRendered() throws Exception {
+        FreeStyleBuild build = j.buildAndAssertSuccess(j.createFreeStyleProject());
+        PolicyReportStore.get().store(build, result());
+
+        PolicyReportStore.Report report = PolicyReportStore.get().render(build);
+        File index = report.getCompressedFile("index.html");
+        report.release();
+        report.release();
+
+        assertTrue(index.isFile());
+        PolicyReportStore.Report again = PolicyReportStore.get().render(build);
+        assertEquals(index, again.getCompressedFile("index.html"));
+        again.release();
+    }
+
+    /* --- Private methods --- */
+
+    private static CheckPolicyComplianceResult result() {
+        ResourceInfo project = new ResourceInfo();
+        project.setDisplayName("project");
+        CheckPolicyComplianceResult result = new CheckPolicyComplianceResult();
+        result.setOrganization("organization");
+        result.setExistingProjects(Collections.singletonMap("project", new PolicyCheckResourceNode(project, null)));
+        result.setNewProjects(new HashMap<String, PolicyCheckResourceNode>());
+        return result;
+    }
+}
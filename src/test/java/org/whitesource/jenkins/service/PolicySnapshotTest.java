@@ -0,0 +1,122 @@
+package org.whitesource.jenkins.service;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.jenkins.Constants;
+import org.whitesource.jenkins.WhiteSourcePublisher;
+import org.whitesource.jenkins.model.WhiteSourceDescriptor;
+import org.whitesource.jenkins.model.WhiteSourceStep;
+import org.whitesource.jenkins.stub.WhiteSourceStubServer;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Policy checks decided by the snapshot, against a stub server rejecting a library.
+ */
+public class PolicySnapshotTest {
+
+    /* --- Static members --- */
+
+    private static final String REJECTED = "0000000000000000000000000000000000000bad";
+
+    private static final String ACCEPTED = "0000000000000000000000000000000000000001";
+
+    /* --- Members --- */
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private WhiteSourceStubServer server;
+
+    private FreeStyleBuild run;
+
+    /* --- Test setup --- */
+
+    @Before
+    public void setUp() throws Exception {
+        server = new WhiteSourceStubServer().reject(REJECTED);
+        WhiteSourcePublisher.DescriptorImpl descriptor = j.jenkins.getDescriptorByType(WhiteSourcePublisher.DescriptorImpl.class);
+        descriptor.setServiceUrl(server.getServiceUrl());
+        descriptor.setApiToken(Secret.fromString("org-token"));
+        descriptor.setCheckPolicies(Constants.ENABLE_ALL);
+        descriptor.setGlobalForceUpdate(false);
+        descriptor.setFailOnError(false);
+        descriptor.setPolicyCacheTtl("0");
+        descriptor.setPolicySnapshotRefresh("10");
+        PolicySnapshot.get().invalidate();
+        run = j.buildAndAssertSuccess(j.createFreeStyleProject());
+    }
+
+    @After
+    public void tearDown() {
+        PolicySnapshot.get().invalidate();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /* --- Tests --- */
+
+    @Test
+    public void knownRejectionOfTheSameProjectIsDecidedLocally() {
+        update(project("module-a", REJECTED));
+        assertEquals(1, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+
+        update(project("module-a", REJECTED));
+        assertEquals(1, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+    }
+
+    @Test
+    public void rejectionOfAnotherProjectGoesToTheServer() {
+        update(project("module-a", REJECTED));
+        assertEquals(1, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+
+        // a project scoped policy may accept the library here
+        server.clearRejections();
+        update(project("module-b", REJECTED));
+        assertEquals(2, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+        assertEquals(1, server.getReceived(RequestType.UPDATE));
+    }
+
+    @Test
+    public void acceptedLibraryIsForgotten() {
+        update(project("module-a", REJECTED));
+        server.clearRejections();
+
+        // not conclusive for a project without the known rejected library
+        update(project("module-a", ACCEPTED));
+        assertEquals(2, server.getReceived(RequestType.CHECK_POLICY_COMPLIANCE));
+    }
+
+    /* --- Private methods --- */
+
+    private void update(Collection<AgentProjectInfo> projectInfos) {
+        WhiteSourceDescriptor globalConfig = new WhiteSourceDescriptor(
+                j.jenkins.getDescriptorByType(WhiteSourcePublisher.DescriptorImpl.class));
+        WhiteSourceStep step = new WhiteSourceStep(globalConfig, null, null, null, null);
+        step.setProductNameOrToken("Snapshot test");
+        step.update(run, TaskListener.NULL, projectInfos);
+    }
+
+    private static Collection<AgentProjectInfo> project(String artifactId, String sha1) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("org.example", artifactId, "1.0"));
+        DependencyInfo dependency = new DependencyInfo("org.example", "library", "1.0");
+        dependency.setSha1(sha1);
+        project.getDependencies().add(dependency);
+        return Collections.singletonList(project);
+    }
+}
@@ -0,0 +1,143 @@
+package org.whitesource.jenkins.service;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+import org.whitesource.agent.client.WssServiceException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests sent through the guards of the controller, and what the circuit breaker is told about them.
+ */
+public class RequestRetryTest {
+
+    /* --- Tests --- */
+
+    @Test
+    public void answeredRequestsCloseTheCircuit() throws Exception {
+        String url = "http://answered.example.com/agent";
+        failures(url, CircuitBreaker.FAILURE_THRESHOLD - 1);
+
+        try {
+            send(url, failure(new HttpResponseException(400, "Bad Request")));
+            fail();
+        } catch (WssServiceException expected) {
+            // the server answered
+        }
+
+        assertEquals(0, CircuitBreaker.forUrl(url).getFailures());
+    }
+
+    @Test
+    public void failuresUnrelatedToTheServerAreNotCounted() throws Exception {
+        String url = "http://not-sent.example.com/agent";
+        failures(url, CircuitBreaker.FAILURE_THRESHOLD - 1);
+
+        try {
+            send(url, failure(new IOException("Failed to serialize the request")));
+            fail();
+        } catch (WssServiceException expected) {
+            // never reached the server
+        }
+
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD - 1, CircuitBreaker.forUrl(url).getFailures());
+        assertEquals(CircuitBreaker.State.CLOSED, CircuitBreaker.forUrl(url).getState());
+    }
+
+    @Test
+    public void openCircuitRefusesWithoutSending() throws Exception {
+        String url = "http://unreachable.example.com/agent";
+        AtomicInteger sent = new AtomicInteger();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            try {
+                send(url, counting(sent, new ConnectException("Connection refused")));
+                fail();
+            } catch (WssServiceException e) {
+                assertTrue(RequestRetry.isRetryable(e));
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.forUrl(url).getState());
+
+        try {
+            send(url, counting(sent, new ConnectException("Connection refused")));
+            fail();
+        } catch (RequestRetry.NotSentException e) {
+            assertFalse(RequestRetry.isRetryable(e));
+        }
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, sent.get());
+    }
+
+    @Test
+    public void expiredDeadlineRefusesWithoutSending() throws Exception {
+        String url = "http://expired.example.com/agent";
+        AtomicInteger sent = new AtomicInteger();
+        Deadline deadline = Deadline.in(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(5);
+
+        try {
+            RequestRetry.send(RequestRetry.guard(url, "org", RequestStats.UPDATE), deadline, counting(sent, null));
+            fail();
+        } catch (RequestRetry.NotSentException expected) {
+            // refused before the limiter
+        }
+        assertEquals(0, sent.get());
+    }
+
+    @Test
+    public void retryableFailures() {
+        assertTrue(RequestRetry.isRetryable(wrap(new HttpResponseException(503, "Service Unavailable"))));
+        assertTrue(RequestRetry.isRetryable(wrap(new HttpResponseException(429, "Too Many Requests"))));
+        assertFalse(RequestRetry.isRetryable(wrap(new HttpResponseException(401, "Unauthorized"))));
+        assertFalse(RequestRetry.isRetryable(new WssServiceException("Invalid organization token")));
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        assertEquals(0, RequestRetry.delay(0, 3));
+        for (int attempt = 0; attempt < 30; attempt++) {
+            long delay = RequestRetry.delay(30, attempt);
+            assertTrue(delay >= TimeUnit.SECONDS.toMillis(15));
+            assertTrue(delay <= TimeUnit.SECONDS.toMillis(300));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static void failures(String url, int count) {
+        for (int i = 0; i < count; i++) {
+            CircuitBreaker.forUrl(url).recordFailure();
+        }
+    }
+
+    private static <T> T send(String url, RequestRetry.Request<T> request) throws Exception {
+        return RequestRetry.send(RequestRetry.guard(url, "org", RequestStats.UPDATE), Deadline.NONE, request);
+    }
+
+    private static RequestRetry.Request<Object> failure(Exception cause) {
+        return counting(new AtomicInteger(), cause);
+    }
+
+    private static RequestRetry.Request<Object> counting(final AtomicInteger sent, final Exception cause) {
+        return new RequestRetry.Request<Object>() {
+            @Override
+            public Object send() throws WssServiceException {
+                sent.incrementAndGet();
+                if (cause != null) {
+                    throw wrap(cause);
+                }
+                return new Object();
+            }
+        };
+    }
+
+    private static WssServiceException wrap(Exception cause) {
+        WssServiceException e = new WssServiceException(cause.getMessage());
+        e.initCause(cause);
+        return e;
+    }
+}
@@ -0,0 +1,146 @@
+package org.whitesource.jenkins.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.jenkins.stub.WhiteSourceStubServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streamed request bodies against the plain bodies of the agent client, as received by a stub server.
+ */
+public class StreamingWssServiceClientTest {
+
+    /* --- Members --- */
+
+    private WhiteSourceStubServer server;
+
+    private StreamingWssServiceClient streamingClient;
+
+    private StreamingWssServiceClient plainClient;
+
+    /* --- Test setup --- */
+
+    @Before
+    public void setUp() throws Exception {
+        server = new WhiteSourceStubServer();
+        String url = server.getServiceUrl() + "agent";
+        streamingClient = new StreamingWssServiceClient(url, false, 1);
+        System.setProperty(StreamingWssServiceClient.DISABLED_PROPERTY, "true");
+        try {
+            plainClient = new StreamingWssServiceClient(url, false, 1);
+        } finally {
+            System.clearProperty(StreamingWssServiceClient.DISABLED_PROPERTY);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /* --- Tests --- */
+
+    @Test
+    public void updateBodyIsTheAgentClientBody() throws Exception {
+        List<AgentProjectInfo> projects = projects();
+        UpdateInventoryRequest request = new UpdateInventoryRequest("org-token", projects);
+        request.setProduct("Streaming test");
+        request.setProductVersion("1.0");
+
+        streamingClient.updateInventory(request);
+        assertSame("the caller's request is left as is", projects, request.getProjects());
+        plainClient.updateInventory(request);
+
+        assertSameBodies();
+    }
+
+    @Test
+    public void policyCheckBodyIsTheAgentClientBody() throws Exception {
+        List<AgentProjectInfo> projects = projects();
+        CheckPolicyComplianceRequest request = new CheckPolicyComplianceRequest("org-token", projects, true);
+        request.setProduct("Streaming test");
+        request.setProductVersion("1.0");
+
+        streamingClient.checkPolicyCompliance(request);
+        assertSame("the caller's request is left as is", projects, request.getProjects());
+        plainClient.checkPolicyCompliance(request);
+
+        assertSameBodies();
+    }
+
+    @Test
+    public void slowServerTimesOutAtTheDeadline() throws Exception {
+        server.latency(TimeUnit.SECONDS.toMillis(10));
+        UpdateInventoryRequest request = new UpdateInventoryRequest("org-token", projects());
+
+        long startedAt = System.nanoTime();
+        Deadline previous = Deadline.in(500, TimeUnit.MILLISECONDS).enter();
+        try {
+            streamingClient.updateInventory(request);
+            fail("the request outlived its deadline");
+        } catch (WssServiceException e) {
+            // expected
+        } finally {
+            Deadline.exit(previous);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        assertTrue("timed out after " + elapsed + " ms", elapsed < 3000);
+    }
+
+    @Test
+    public void expiredDeadlineSendsNothing() throws Exception {
+        Deadline previous = Deadline.in(1, TimeUnit.NANOSECONDS).enter();
+        try {
+            Thread.sleep(1);
+            streamingClient.updateInventory(new UpdateInventoryRequest("org-token", projects()));
+            fail("the request was sent past its deadline");
+        } catch (WssServiceException e) {
+            // expected
+        } finally {
+            Deadline.exit(previous);
+        }
+        assertTrue(server.getRequests().isEmpty());
+    }
+
+    /* --- Private methods --- */
+
+    private void assertSameBodies() {
+        List<WhiteSourceStubServer.Request> requests = server.getRequests();
+        assertEquals(2, requests.size());
+        WhiteSourceStubServer.Request streamed = requests.get(0);
+        WhiteSourceStubServer.Request plain = requests.get(1);
+        assertTrue(streamed.isChunked());
+        assertFalse(plain.isChunked());
+        assertEquals(plain.getParameters(), streamed.getParameters());
+        assertArrayEquals(plain.getBody(), streamed.getBody());
+        assertEquals(projects().size(), streamed.getProjects().size());
+    }
+
+    private static List<AgentProjectInfo> projects() {
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            AgentProjectInfo project = new AgentProjectInfo();
+            project.setCoordinates(new Coordinates("org.example", "module-" + p, "1.0"));
+            for (int i = 0; i < 500; i++) {
+                // names with characters the form encoding escapes
+                DependencyInfo dependency = new DependencyInfo("org.example", "library " + i + "+é", "1." + i);
+                dependency.setSha1(String.format("%040x", p * 1000 + i));
+                project.getDependencies().add(dependency);
+            }
+            projects.add(project);
+        }
+        return projects;
+    }
+}
@@ -0,0 +1,70 @@
+package org.whitesource.jenkins.service;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.whitesource.jenkins.PolicyTrendAction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trend records of the builds of a job, as the trend page reads them.
+ */
+public class TrendIndexTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    /* --- Tests --- */
+
+    @Test
+    public void trendShowsOnceABuildIsRecorded() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+        assertFalse(TrendIndex.exists(project));
+        assertNull(project.getAction(PolicyTrendAction.class));
+
+        record(build);
+
+        assertTrue(TrendIndex.exists(project));
+        assertNotNull(project.getAction(PolicyTrendAction.class));
+    }
+
+    @Test
+    public void deletedBuildsLeaveTheTrend() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        List<FreeStyleBuild> builds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FreeStyleBuild build = j.buildAndAssertSuccess(project);
+            record(build);
+            builds.add(build);
+        }
+
+        builds.get(1).delete();
+
+        assertEquals(Arrays.asList(1, 3), numbers(TrendIndex.read(project, PolicyTrendAction.MAX_BUILDS)));
+        assertEquals(Arrays.asList(3), numbers(TrendIndex.read(project, 1)));
+    }
+
+    /* --- Private methods --- */
+
+    private static void record(FreeStyleBuild build) throws Exception {
+        TrendIndex.append(build, new TrendIndex.Record(build.getNumber(), build.getTimeInMillis(), 10, 1, 100, 200));
+    }
+
+    private static List<Integer> numbers(List<TrendIndex.Record> records) {
+        List<Integer> numbers = new ArrayList<>();
+        for (TrendIndex.Record record : records) {
+            numbers.add(record.getNumber());
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,119 @@
+package org.whitesource.jenkins.service;
+
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.client.WssServiceException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Update requests of concurrent builds merged by the coalescer.
+ */
+public class UpdateCoalescerTest {
+
+    /* --- Static members --- */
+
+    private static final long WINDOW = TimeUnit.SECONDS.toMillis(30);
+
+    /* --- Tests --- */
+
+    @Test
+    public void interruptedLeaderStillSendsTheGroup() throws Exception {
+        final String key = "interrupted";
+        final AtomicInteger sent = new AtomicInteger();
+        final CountDownLatch leaderDone = new CountDownLatch(1);
+        final AtomicBoolean interruptedAfterSend = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<UpdateInventoryResult>> leader = executor.submit(new Callable<List<UpdateInventoryResult>>() {
+                @Override
+                public List<UpdateInventoryResult> call() throws Exception {
+                    List<UpdateInventoryResult> results = submit(key, "leader", Deadline.NONE, new UpdateCoalescer.Sender() {
+                        @Override
+                        public List<UpdateInventoryResult> send(Collection<AgentProjectInfo> projectInfos, int mergedRequests) {
+                            sent.incrementAndGet();
+                            return Collections.singletonList(new UpdateInventoryResult());
+                        }
+                    });
+                    interruptedAfterSend.set(Thread.currentThread().isInterrupted());
+                    leaderDone.countDown();
+                    return results;
+                }
+            });
+            // the first request opens the group, the second joins it
+            Thread.sleep(200);
+            Future<List<UpdateInventoryResult>> follower = executor.submit(new Callable<List<UpdateInventoryResult>>() {
+                @Override
+                public List<UpdateInventoryResult> call() throws Exception {
+                    return submit(key, "follower", Deadline.in(1, TimeUnit.MINUTES), null);
+                }
+            });
+            Thread.sleep(200);
+
+            leader.cancel(true);
+
+            assertEquals(1, follower.get(10, TimeUnit.SECONDS).size());
+            assertTrue(leaderDone.await(10, TimeUnit.SECONDS));
+            assertEquals(1, sent.get());
+            assertTrue(interruptedAfterSend.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void followerWaitIsBoundedByItsDeadline() throws Exception {
+        final String key = "slow";
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Callable<List<UpdateInventoryResult>>() {
+                @Override
+                public List<UpdateInventoryResult> call() throws Exception {
+                    return submit(key, "leader", Deadline.in(200, TimeUnit.MILLISECONDS), new UpdateCoalescer.Sender() {
+                        @Override
+                        public List<UpdateInventoryResult> send(Collection<AgentProjectInfo> projectInfos, int mergedRequests) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return Collections.emptyList();
+                        }
+                    });
+                }
+            });
+            Thread.sleep(100);
+
+            long startedAt = System.nanoTime();
+            try {
+                submit(key, "follower", Deadline.in(500, TimeUnit.MILLISECONDS), null);
+                fail();
+            } catch (WssServiceException expected) {
+                // the leader is still sending
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt) < 5);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static List<UpdateInventoryResult> submit(String key, String project, Deadline deadline, UpdateCoalescer.Sender sender)
+            throws WssServiceException, InterruptedException {
+        AgentProjectInfo projectInfo = new AgentProjectInfo();
+        projectInfo.setCoordinates(new Coordinates(null, project, "1"));
+        return UpdateCoalescer.get().submit(key, Collections.singletonList(projectInfo), WINDOW, false, deadline, sender);
+    }
+}
@@ -0,0 +1,374 @@
+package org.whitesource.jenkins.stub;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.dispatch.ResultEnvelope;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.RequestPolicyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for the WhiteSource agent endpoint, speaking the update and policy check protocol.
+ * <p>
+ * Requests are form posts to <code>/agent</code> with the request type and the gzip compressed,
+ * base64 encoded projects, answered with a result envelope. Latency, failures and throttling are configurable
+ * so tests can see how the plugin behaves against a slow or overloaded server.
+ */
+public class WhiteSourceStubServer implements AutoCloseable {
+
+    /* --- Static members --- */
+
+    public static final String ORGANIZATION = "Stub organization";
+
+    public static final String REJECTING_POLICY = "Stub rejection";
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final int THREADS = 64;
+
+    /* --- Members --- */
+
+    private final Gson gson = new Gson();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile int maxRequestsPerSecond;
+    private volatile int maxBodyCapture = 16;
+
+    private final Set<String> rejectedSha1s = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Map<RequestType, AtomicInteger> received = new EnumMap<>(RequestType.class);
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+    private long window;
+    private int windowRequests;
+
+    /* --- Constructors --- */
+
+    public WhiteSourceStubServer() throws IOException {
+        for (RequestType type : RequestType.values()) {
+            received.put(type, new AtomicInteger());
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/agent", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return The service url to configure, the plugin appends <code>agent</code> to it.
+     */
+    public String getServiceUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public WhiteSourceStubServer latency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param rate Share of the requests answered with an internal server error, 0 to 1.
+     */
+    public WhiteSourceStubServer errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * @param max Requests per second answered, the others get 429 Too Many Requests. 0 for no limit.
+     */
+    public WhiteSourceStubServer throttle(int max) {
+        this.maxRequestsPerSecond = max;
+        return this;
+    }
+
+    /**
+     * Libraries with these SHA-1s are rejected by the policy checks.
+     */
+    public WhiteSourceStubServer reject(String... sha1s) {
+        rejectedSha1s.addAll(Arrays.asList(sha1s));
+        return this;
+    }
+
+    public WhiteSourceStubServer clearRejections() {
+        rejectedSha1s.clear();
+        return this;
+    }
+
+    /**
+     * @param max Number of latest requests whose body is kept, see {@link #getRequests()}.
+     */
+    public WhiteSourceStubServer captureBodies(int max) {
+        this.maxBodyCapture = max;
+        return this;
+    }
+
+    public int getReceived(RequestType type) {
+        return received.get(type).get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return The latest requests answered, oldest first.
+     */
+    public List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public void reset() {
+        for (AtomicInteger count : received.values()) {
+            count.set(0);
+        }
+        failed.set(0);
+        throttled.set(0);
+        requests.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /* --- Private methods --- */
+
+    private void serve(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = IOUtils.toByteArray(in);
+        }
+
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!tryAcquire()) {
+            throttled.incrementAndGet();
+            exchange.sendResponseHeaders(HTTP_TOO_MANY_REQUESTS, -1);
+            return;
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            failed.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            return;
+        }
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (NameValuePair pair : URLEncodedUtils.parse(new String(body, StandardCharsets.UTF_8), StandardCharsets.UTF_8)) {
+            parameters.put(pair.getName(), pair.getValue());
+        }
+        RequestType type = RequestType.valueOf(parameters.get(APIConstants.PARAM_REQUEST_TYPE));
+        Collection<AgentProjectInfo> projects = decodeProjects(parameters.get(APIConstants.PARAM_DIFF));
+        received.get(type).incrementAndGet();
+        capture(new Request(type, body, parameters, projects, exchange.getRequestHeaders().getFirst("Transfer-Encoding")));
+
+        String data;
+        if (type == RequestType.UPDATE) {
+            data = gson.toJson(updateResult(projects));
+        } else if (type == RequestType.CHECK_POLICY_COMPLIANCE) {
+            data = gson.toJson(policyResult(projects));
+        } else {
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+        byte[] response = gson.toJson(new ResultEnvelope(ResultEnvelope.STATUS_SUCCESS, "ok", data)).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        if (second != window) {
+            window = second;
+            windowRequests = 0;
+        }
+        return ++windowRequests <= maxRequestsPerSecond;
+    }
+
+    private void capture(Request request) {
+        synchronized (requests) {
+            requests.add(request);
+            while (requests.size() > maxBodyCapture) {
+                requests.remove(0);
+            }
+        }
+    }
+
+    private Collection<AgentProjectInfo> decodeProjects(String diff) throws IOException {
+        if (diff == null) {
+            return Collections.emptyList();
+        }
+        try (InputStreamReader reader = new InputStreamReader(new GZIPInputStream(
+                new ByteArrayInputStream(Base64.decodeBase64(diff))), StandardCharsets.UTF_8)) {
+            Collection<AgentProjectInfo> projects = gson.fromJson(reader, new TypeToken<Collection<AgentProjectInfo>>() {
+            }.getType());
+            return projects == null ? Collections.<AgentProjectInfo>emptyList() : projects;
+        }
+    }
+
+    private UpdateInventoryResult updateResult(Collection<AgentProjectInfo> projects) {
+        UpdateInventoryResult result = new UpdateInventoryResult();
+        result.setOrganization(ORGANIZATION);
+        List<String> updated = new ArrayList<>();
+        for (AgentProjectInfo project : projects) {
+            updated.add(projectName(project));
+        }
+        result.setUpdatedProjects(updated);
+        result.setCreatedProjects(new ArrayList<String>());
+        return result;
+    }
+
+    private CheckPolicyComplianceResult policyResult(Collection<AgentProjectInfo> projects) {
+        Map<String, PolicyCheckResourceNode> existing = new LinkedHashMap<>();
+        for (AgentProjectInfo project : projects) {
+            ResourceInfo projectResource = new ResourceInfo();
+            projectResource.setDisplayName(projectName(project));
+            PolicyCheckResourceNode root = new PolicyCheckResourceNode(projectResource, null);
+            addLibraries(project.getDependencies(), root.getChildren());
+            existing.put(projectName(project), root);
+        }
+        CheckPolicyComplianceResult result = new CheckPolicyComplianceResult();
+        result.setOrganization(ORGANIZATION);
+        result.setExistingProjects(existing);
+        result.setNewProjects(new HashMap<String, PolicyCheckResourceNode>());
+        return result;
+    }
+
+    private void addLibraries(Collection<DependencyInfo> dependencies, Collection<PolicyCheckResourceNode> nodes) {
+        if (dependencies == null) {
+            return;
+        }
+        for (DependencyInfo dependency : dependencies) {
+            ResourceInfo resource = new ResourceInfo();
+            resource.setDisplayName(dependency.getArtifactId());
+            resource.setSha1(dependency.getSha1());
+            RequestPolicyInfo policy = null;
+            if (dependency.getSha1() != null && rejectedSha1s.contains(dependency.getSha1())) {
+                policy = new RequestPolicyInfo();
+                policy.setDisplayName(REJECTING_POLICY);
+                policy.setActionType("Reject");
+            }
+            PolicyCheckResourceNode node = new PolicyCheckResourceNode(resource, policy);
+            addLibraries(dependency.getChildren(), node.getChildren());
+            nodes.add(node);
+        }
+    }
+
+    private static String projectName(AgentProjectInfo project) {
+        if (project.getCoordinates() != null && project.getCoordinates().getArtifactId() != null) {
+            return project.getCoordinates().getArtifactId();
+        }
+        return project.getProjectToken() == null ? "Project" : project.getProjectToken();
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A request answered by the stub.
+     */
+    public static final class Request {
+
+        private final RequestType type;
+        private final byte[] body;
+        private final Map<String, String> parameters;
+        private final Collection<AgentProjectInfo> projects;
+        private final String transferEncoding;
+
+        private Request(RequestType type, byte[] body, Map<String, String> parameters, Collection<AgentProjectInfo> projects,
+                        String transferEncoding) {
+            this.type = type;
+            this.body = body;
+            this.parameters = parameters;
+            this.projects = projects;
+            this.transferEncoding = transferEncoding;
+        }
+
+        public RequestType getType() {
+            return type;
+        }
+
+        /**
+         * @return The form body as received, once the transfer encoding is removed.
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+
+        public Collection<AgentProjectInfo> getProjects() {
+            return projects;
+        }
+
+        public boolean isChunked() {
+            return "chunked".equalsIgnoreCase(transferEncoding);
+        }
+    }
+}